@@ -0,0 +1,85 @@
+package programming.set8.christchess;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks that move validation allocates nothing: {@link ChessData#isValidMove} and
+ * {@link ChessData#isValidMoveForPiece} are called for every piece and every square of a
+ * series of positions, and the bytes allocated by the calling thread are compared before
+ * and after. Exits with status 1 if anything was allocated.
+ *
+ * Usage: {@code AllocationCheck [positions]}
+ */
+public class AllocationCheck {
+
+    private static final int WARM_UP_ROUNDS = 200;
+
+    public static void main(String[] args) {
+        int positionCount = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+
+        java.lang.management.ThreadMXBean platformBean = ManagementFactory.getThreadMXBean();
+        if (!(platformBean instanceof com.sun.management.ThreadMXBean)) {
+            System.err.println("This VM cannot count allocated bytes per thread");
+            System.exit(1);
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) platformBean;
+        threads.setThreadAllocatedMemoryEnabled(true);
+        long thread = Thread.currentThread().getId();
+
+        ChessData[] positions = randomPositions(positionCount, new Random(1));
+
+        // lets the JIT compiler compile the validation before it is measured
+        long valid = 0;
+        for (int round = 0; round < WARM_UP_ROUNDS; round++) {
+            valid += validateAll(positions);
+        }
+
+        long before = threads.getThreadAllocatedBytes(thread);
+        valid += validateAll(positions);
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+        System.out.printf("%d positions, %d valid moves seen, %d bytes allocated while validating%n",
+                positions.length, valid, allocated);
+        System.exit(allocated == 0 ? 0 : 1);
+    }
+
+    // positions reached by random legal moves from the initial position
+    private static ChessData[] randomPositions(int count, Random random) {
+        ChessData[] positions = new ChessData[count];
+        ChessData data = new ChessData();
+        data.initNewGame();
+        MoveList moves = new MoveList();
+        for (int i = 0; i < count; i++) {
+            data.generateLegalMoves(data.getActivePlayer(), moves);
+            if (moves.isEmpty() || GameTermination.isInsufficientMaterial(data)) {
+                data.initNewGame();
+                data.generateLegalMoves(data.getActivePlayer(), moves);
+            }
+            data.makeMove(moves.get(random.nextInt(moves.size())));
+            positions[i] = new ChessData(data);
+        }
+        return positions;
+    }
+
+    // indexed loops, as an iterator would be an allocation of its own
+    private static long validateAll(ChessData[] positions) {
+        long valid = 0;
+        for (ChessData data : positions) {
+            List<ChessPiece> pieces = data.getPieces();
+            for (int i = 0; i < pieces.size(); i++) {
+                ChessPiece piece = pieces.get(i);
+                for (int sq = 0; sq < Bitboards.SQUARES; sq++) {
+                    if (data.isValidMoveForPiece(piece, sq & 7, sq >>> 3)) {
+                        valid++;
+                    }
+                    if (data.isValidMove(piece, sq & 7, sq >>> 3)) {
+                        valid++;
+                    }
+                }
+            }
+        }
+        return valid;
+    }
+}
@@ -0,0 +1,129 @@
+package programming.set8.christchess;
+
+/**
+ * Static lookup tables and helpers for the 64-bit board masks used by {@link ChessData}.
+ *
+ * Squares are numbered {@code y * 8 + x}, so square 0 is a8 (the top left corner of the
+ * view) and square 63 is h1.
+ */
+final class Bitboards {
+
+    static final int SQUARES = 64;
+
+    static final long[] KNIGHT_ATTACKS = new long[SQUARES];
+    static final long[] KING_ATTACKS = new long[SQUARES];
+
+    // indexed by player, then square: the squares a pawn of that player attacks
+    static final long[][] PAWN_ATTACKS = new long[3][SQUARES];
+
+    // squares strictly between two squares on a common rank, file or diagonal
+    static final long[][] BETWEEN = new long[SQUARES][SQUARES];
+
+    // the whole rank, file or diagonal through two squares, if they share one
+    static final long[][] LINE = new long[SQUARES][SQUARES];
+
+    // rays in the directions N, S, E, W, NE, NW, SE, SW (N meaning towards rank 8)
+    private static final int[] RAY_DX = {0, 0, 1, -1, 1, -1, 1, -1};
+    private static final int[] RAY_DY = {-1, 1, 0, 0, -1, -1, 1, 1};
+    private static final long[][] RAYS = new long[8][SQUARES];
+
+    private static final int N = 0, S = 1, E = 2, W = 3, NE = 4, NW = 5, SE = 6, SW = 7;
+    private static final int[] OPPOSITE = {S, N, W, E, SW, SE, NW, NE};
+
+    static {
+        int[][] knightOffsets = {{1, 2}, {2, 1}, {2, -1}, {1, -2}, {-1, -2}, {-2, -1}, {-2, 1}, {-1, 2}};
+
+        for (int sq = 0; sq < SQUARES; sq++) {
+            int x = sq & 7;
+            int y = sq >>> 3;
+
+            for (int[] offset : knightOffsets) {
+                KNIGHT_ATTACKS[sq] |= bit(x + offset[0], y + offset[1]);
+            }
+
+            for (int dx = -1; dx <= 1; dx++) {
+                for (int dy = -1; dy <= 1; dy++) {
+                    if (dx != 0 || dy != 0) {
+                        KING_ATTACKS[sq] |= bit(x + dx, y + dy);
+                    }
+                }
+            }
+
+            // player 1 moves towards y == 0, player 2 towards y == 7
+            PAWN_ATTACKS[ChessPiece.PLAYER1][sq] = bit(x - 1, y - 1) | bit(x + 1, y - 1);
+            PAWN_ATTACKS[ChessPiece.PLAYER2][sq] = bit(x - 1, y + 1) | bit(x + 1, y + 1);
+
+            for (int dir = 0; dir < RAYS.length; dir++) {
+                long between = 0L;
+                for (int cx = x + RAY_DX[dir], cy = y + RAY_DY[dir]; isOnBoard(cx, cy); cx += RAY_DX[dir], cy += RAY_DY[dir]) {
+                    RAYS[dir][sq] |= bit(cx, cy);
+                    BETWEEN[sq][square(cx, cy)] = between;
+                    between |= bit(cx, cy);
+                }
+            }
+        }
+
+        for (int sq = 0; sq < SQUARES; sq++) {
+            for (int dir = 0; dir < RAYS.length; dir++) {
+                long line = RAYS[dir][sq] | RAYS[OPPOSITE[dir]][sq] | bit(sq);
+                long targets = RAYS[dir][sq];
+                while (targets != 0L) {
+                    LINE[sq][Long.numberOfTrailingZeros(targets)] = line;
+                    targets &= targets - 1;
+                }
+            }
+        }
+    }
+
+    private Bitboards() {
+    }
+
+    static boolean isOnBoard(int x, int y) {
+        return x >= 0 && x < 8 && y >= 0 && y < 8;
+    }
+
+    static int square(int x, int y) {
+        return y * 8 + x;
+    }
+
+    static long bit(int sq) {
+        return 1L << sq;
+    }
+
+    static long bit(int x, int y) {
+        return isOnBoard(x, y) ? 1L << square(x, y) : 0L;
+    }
+
+    static boolean isSlider(int type) {
+        return type == ChessPiece.BISHOP || type == ChessPiece.ROOK || type == ChessPiece.QUEEN;
+    }
+
+    static long rookAttacks(int sq, long occupied) {
+        return rayAttacks(N, sq, occupied) | rayAttacks(S, sq, occupied) |
+                rayAttacks(E, sq, occupied) | rayAttacks(W, sq, occupied);
+    }
+
+    static long bishopAttacks(int sq, long occupied) {
+        return rayAttacks(NE, sq, occupied) | rayAttacks(NW, sq, occupied) |
+                rayAttacks(SE, sq, occupied) | rayAttacks(SW, sq, occupied);
+    }
+
+    // the ray stops at (and includes) the first occupied square
+    private static long rayAttacks(int dir, int sq, long occupied) {
+        long ray = RAYS[dir][sq];
+        long blockers = ray & occupied;
+        if (blockers == 0L) {
+            return ray;
+        }
+
+        // S, E, SE and SW increase the square index, so the nearest
+        // blocker is the lowest bit; for the other rays it is the highest
+        int blocker;
+        if (dir == S || dir == E || dir == SE || dir == SW) {
+            blocker = Long.numberOfTrailingZeros(blockers);
+        } else {
+            blocker = 63 - Long.numberOfLeadingZeros(blockers);
+        }
+        return ray ^ RAYS[dir][blocker];
+    }
+}
@@ -0,0 +1,29 @@
+package programming.set8.christchess;
+
+/**
+ * Receives the changes of the pieces on a {@link ChessData} board it was added to with
+ * {@link ChessData#addBoardListener(BoardListener)}. A change names the squares whose piece
+ * changed and, if it was a move played, the move; the pieces are passed as codes built by
+ * {@link ChessPiece#getCode()}, so nothing is allocated per change.
+ *
+ * Listeners are called on the thread that changed the board, right after the change, and
+ * must return quickly. Slow listeners, e.g. views that draw, are wrapped in a
+ * {@link CoalescingBoardListener}.
+ */
+public interface BoardListener {
+
+    /**
+     * Called after pieces changed.
+     *
+     * @param pieceCodes
+     *            the code of the piece on each square, {@link ChessPiece#NO_PIECE} if the
+     *            square is empty; the array belongs to the caller, must not be changed
+     *            and is only valid during the call
+     * @param changedSquares
+     *            the squares whose piece changed, as a bitboard
+     * @param move
+     *            the move that was played, encoded by {@link Move}, or {@link Move#NONE} if
+     *            the pieces changed otherwise, e.g. because a move was taken back
+     */
+    void boardChanged(byte[] pieceCodes, long changedSquares, int move);
+}
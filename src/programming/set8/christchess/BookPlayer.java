@@ -0,0 +1,36 @@
+package programming.set8.christchess;
+
+import java.util.Random;
+
+/**
+ * A player that plays from an opening book as long as the position is in it, and leaves
+ * the other positions to another player.
+ */
+public class BookPlayer implements ChessPlayer {
+
+    private final OpeningBook book;
+    private final ChessPlayer player;
+    private final Random random;
+
+    /**
+     * Creates a player using a book.
+     *
+     * @param book
+     *            the opening book
+     * @param player
+     *            chooses the moves of positions not in the book
+     * @param seed
+     *            the seed for choosing among the book moves
+     */
+    public BookPlayer(OpeningBook book, ChessPlayer player, long seed) {
+        this.book = book;
+        this.player = player;
+        this.random = new Random(seed);
+    }
+
+    @Override
+    public int selectMove(ChessData data) {
+        int move = book.selectMove(data, random);
+        return move != Move.NONE ? move : player.selectMove(data);
+    }
+}
@@ -1,84 +1,274 @@
 package programming.set8.christchess;
 
-import acm.graphics.GPoint;
-
+import java.nio.ByteBuffer;
 import java.util.*;
-import java.util.function.BiPredicate;
-import java.util.stream.IntStream;
 
+/**
+ * The state of a chess game: the pieces, the active player and the turn count.
+ *
+ * ChessData and the ChessPiece objects it holds are not thread-safe, and a search changes
+ * the board while it runs by making and unmaking moves. An instance must only be used by
+ * one thread at a time; threads that work on the same game each use their own copy made
+ * with {@link #ChessData(ChessData)}.
+ */
 public class ChessData {
 
     private int player;
 
     private int turnCount;
 
-    private ArrayList<ChessPiece> pieces = new ArrayList<>();
+    // a plain array rather than an ArrayList: makeMove and unmakeMove change the
+    // list while callers may be iterating over getPieces(), which an ArrayList
+    // would report as a concurrent modification even though the list is restored
+    private ChessPiece[] pieces = new ChessPiece[32];
+    private int pieceCount;
+
+    private final List<ChessPiece> pieceList = new AbstractList<ChessPiece>() {
+        @Override
+        public ChessPiece get(int index) {
+            if (index >= pieceCount) {
+                throw new IndexOutOfBoundsException("index " + index + ", size " + pieceCount);
+            }
+            return pieces[index];
+        }
+
+        @Override
+        public int size() {
+            return pieceCount;
+        }
+    };
+
+    // undo records of makeMove, one entry per move that has not been unmade
+    private int undoCount;
+    private int[] undoFrom = new int[16];
+    private int[] undoTo = new int[16];
+    private int[] undoCapturedIndex = new int[16];
+    private int[] undoTurnCount = new int[16];
+    private int[] undoPlayer = new int[16];
+    private ChessPiece[] undoCaptured = new ChessPiece[16];
+
+    // the moves played with movePieceTo, for undoMove and redoMove
+    private final MoveHistory history = new MoveHistory();
+
+    // the pieces indexed by square, see Bitboards for the numbering
+    private final ChessPiece[] board = new ChessPiece[Bitboards.SQUARES];
+
+    // one mask per player and piece type, plus one occupancy mask per player
+    private final long[][] pieceMasks = new long[3][ChessPiece.KING + 1];
+    private final long[] playerMasks = new long[3];
+    private long occupied;
+
+    // Zobrist hash of the pieces and the active player, see Zobrist
+    private long hash;
+
+    // the squares attacked by the piece on each square, and per player how many
+    // pieces attack each square; kept up to date by placePiece and liftPiece
+    private final long[] squareAttacks = new long[Bitboards.SQUARES];
+    private final int[][] attackCounts = new int[3][Bitboards.SQUARES];
+    private final long[] attackMaps = new long[3];
+
+    // counts every change of the position, so cached results can tell whether
+    // they still belong to it
+    private long version;
+
+    // per player the legal targets of the pieces, indexed by square, and the squares
+    // of the pieces that have a legal move; valid while the version is unchanged
+    private final long[][] legalTargetCache = new long[3][Bitboards.SQUARES];
+    private final long[] movablePieces = new long[3];
+    private final long[] cacheVersions = { -1L, -1L, -1L };
+
+    // told about the changes made by the public methods that move or set up pieces;
+    // pieceCodes is brought up to date for the changed squares before they are told
+    private BoardListener[] listeners = new BoardListener[0];
+    private final byte[] pieceCodes = new byte[Bitboards.SQUARES];
 
     private static int[] DEFAULT_POSITIONS = {
             ChessPiece.ROOK, ChessPiece.KNIGHT, ChessPiece.BISHOP, ChessPiece.QUEEN,
             ChessPiece.KING, ChessPiece.BISHOP, ChessPiece.KNIGHT, ChessPiece.ROOK
     };
 
-    private final HashMap<GPoint, BiPredicate<ChessPiece, GPoint>> pawnValidationLambdas = new HashMap<>();
+    // piece letters in FEN, indexed by piece type; upper case for player 1
+    private static final String FEN_PIECES = "PNBRQK";
+
+    private static final long ALL_SQUARES = -1L;
+
+    // occupied squares, active player and turn count before the pieces in pack()
+    private static final int PACKED_HEADER = 8 + 1 + 4;
 
     public void initNewGame() {
-        this.player = ChessPiece.PLAYER1;
+        this.clearBoard();
+        this.turnCount = 0;
+        this.setActivePlayer(ChessPiece.PLAYER1);
 
         // add pieces
-        for (int x = 0; x < ChessView.columns.length; x++) {
+        for (int x = 0; x < DEFAULT_POSITIONS.length; x++) {
             // pawns
-            addNewPiece(ChessPiece.PAWN, ChessPiece.PLAYER1, x, 6);
-            addNewPiece(ChessPiece.PAWN, ChessPiece.PLAYER2, x, 1);
+            placeNewPiece(new ChessPiece(ChessPiece.PAWN, ChessPiece.PLAYER1, x, 6));
+            placeNewPiece(new ChessPiece(ChessPiece.PAWN, ChessPiece.PLAYER2, x, 1));
 
             // other pieces
-            addNewPiece(DEFAULT_POSITIONS[x], ChessPiece.PLAYER1, x, 7);
-            addNewPiece(DEFAULT_POSITIONS[x], ChessPiece.PLAYER2, x, 0);
+            placeNewPiece(new ChessPiece(DEFAULT_POSITIONS[x], ChessPiece.PLAYER1, x, 7));
+            placeNewPiece(new ChessPiece(DEFAULT_POSITIONS[x], ChessPiece.PLAYER2, x, 0));
         }
+        publish(ALL_SQUARES, Move.NONE);
     }
 
     public ChessData() {
-        BiPredicate<ChessPiece, GPoint> schlagen = (chessPiece, target) ->
-            fieldHasEnemyPiece(chessPiece.getPlayer(), (int)target.getX(), (int)target.getY());
-
-        pawnValidationLambdas.put(new GPoint(-1,1), schlagen);
-        pawnValidationLambdas.put(new GPoint(1,1), schlagen);
-
-        pawnValidationLambdas.put(new GPoint(0, 1), (chessPiece, target) -> {
-            return this.getPieceAt((int)target.getX(), (int)target.getY()) == null;
-        });
-
-
-        pawnValidationLambdas.put(new GPoint(0, 2), (chessPiece, target) -> {
-            return isPawnInStartingLine(chessPiece) && this.getPieceAt((int)target.getX(), (int)target.getY()) == null;
-        });
-
     }
 
     public ChessData(ChessData data) {
+        this();
+        if (EngineStats.ENABLED) {
+            EngineStats.countPositionCopy();
+        }
         for (ChessPiece piece: data.getPieces()) {
-            this.addNewPiece(new ChessPiece(piece));
+            this.placeNewPiece(new ChessPiece(piece));
         }
 
         this.setActivePlayer(data.getActivePlayer());
-
+        this.turnCount = data.getTurn();
     }
 
     public ChessPiece addNewPiece(int type, int player, int x, int y) {
         ChessPiece piece = new ChessPiece(type, player, x, y);
-        this.pieces.add(piece);
+        this.addNewPiece(piece);
         return piece;
     }
 
     public void addNewPiece(ChessPiece piece) {
-        this.pieces.add(piece);
+        placeNewPiece(piece);
+        publish(Bitboards.bit(piece.getX(), piece.getY()), Move.NONE);
+    }
+
+    private void placeNewPiece(ChessPiece piece) {
+        if (!Bitboards.isOnBoard(piece.getX(), piece.getY())) {
+            throw new IllegalArgumentException("piece is not on the board: " + piece);
+        }
+        if (this.getPieceAt(piece.getX(), piece.getY()) != null) {
+            throw new IllegalArgumentException("square is already occupied: " + piece);
+        }
+        if (this.pieceCount == this.pieces.length) {
+            this.pieces = Arrays.copyOf(this.pieces, this.pieceCount * 2);
+        }
+        this.pieces[this.pieceCount++] = piece;
+        placePiece(piece, Bitboards.square(piece.getX(), piece.getY()));
     }
 
     public void removeAllPieces() {
-        this.pieces.clear();
+        long removed = this.occupied;
+        clearBoard();
+        publish(removed, Move.NONE);
+    }
+
+    private void clearBoard() {
+        Arrays.fill(this.pieces, null);
+        this.pieceCount = 0;
+        Arrays.fill(this.board, null);
+        for (long[] masks : this.pieceMasks) {
+            Arrays.fill(masks, 0L);
+        }
+        Arrays.fill(this.playerMasks, 0L);
+        this.occupied = 0L;
+        this.hash = Zobrist.playerKey(this.player);
+        Arrays.fill(this.squareAttacks, 0L);
+        for (int[] counts : this.attackCounts) {
+            Arrays.fill(counts, 0);
+        }
+        Arrays.fill(this.attackMaps, 0L);
+        this.version++;
+        Arrays.fill(this.undoCaptured, null);
+        this.undoCount = 0;
+        this.history.clear();
     }
 
+    // pieces must only be moved through this class, otherwise
+    // the masks no longer match the piece coordinates
     public List<ChessPiece> getPieces() {
-        return this.pieces;
+        return this.pieceList;
+    }
+
+    private void placePiece(ChessPiece piece, int sq) {
+        version++;
+        long bit = Bitboards.bit(sq);
+        board[sq] = piece;
+        pieceMasks[piece.getPlayer()][piece.getType()] |= bit;
+        playerMasks[piece.getPlayer()] |= bit;
+        occupied |= bit;
+        hash ^= Zobrist.PIECE_KEYS[piece.getPlayer()][piece.getType()][sq];
+
+        setSquareAttacks(piece.getPlayer(), sq, attacksFrom(sq));
+        updateSlidersThrough(sq);
+    }
+
+    private void liftPiece(ChessPiece piece, int sq) {
+        version++;
+        long bit = Bitboards.bit(sq);
+        board[sq] = null;
+        pieceMasks[piece.getPlayer()][piece.getType()] &= ~bit;
+        playerMasks[piece.getPlayer()] &= ~bit;
+        occupied &= ~bit;
+        hash ^= Zobrist.PIECE_KEYS[piece.getPlayer()][piece.getType()][sq];
+
+        setSquareAttacks(piece.getPlayer(), sq, 0L);
+        updateSlidersThrough(sq);
+    }
+
+    // a square that becomes empty or occupied only changes the attacks of
+    // sliding pieces whose rays reach it; every other piece keeps its attacks
+    private void updateSlidersThrough(int sq) {
+        long bit = Bitboards.bit(sq);
+        long sliders = occupied & ~bit;
+        while (sliders != 0L) {
+            int from = Long.numberOfTrailingZeros(sliders);
+            if ((squareAttacks[from] & bit) != 0L && Bitboards.isSlider(board[from].getType())) {
+                setSquareAttacks(board[from].getPlayer(), from, attacksFrom(from));
+            }
+            sliders &= sliders - 1;
+        }
+    }
+
+    private void setSquareAttacks(int player, int sq, long attacks) {
+        long old = squareAttacks[sq];
+        squareAttacks[sq] = attacks;
+
+        int[] counts = attackCounts[player];
+        long removed = old & ~attacks;
+        while (removed != 0L) {
+            int target = Long.numberOfTrailingZeros(removed);
+            if (--counts[target] == 0) {
+                attackMaps[player] &= ~Bitboards.bit(target);
+            }
+            removed &= removed - 1;
+        }
+        long added = attacks & ~old;
+        while (added != 0L) {
+            int target = Long.numberOfTrailingZeros(added);
+            if (counts[target]++ == 0) {
+                attackMaps[player] |= Bitboards.bit(target);
+            }
+            added &= added - 1;
+        }
+    }
+
+    // the squares the piece on {@code sq} attacks, whether they are empty or not
+    private long attacksFrom(int sq) {
+        ChessPiece piece = board[sq];
+        switch (piece.getType()) {
+            case ChessPiece.PAWN:
+                return Bitboards.PAWN_ATTACKS[piece.getPlayer()][sq];
+            case ChessPiece.KNIGHT:
+                return Bitboards.KNIGHT_ATTACKS[sq];
+            case ChessPiece.BISHOP:
+                return Bitboards.bishopAttacks(sq, occupied);
+            case ChessPiece.ROOK:
+                return Bitboards.rookAttacks(sq, occupied);
+            case ChessPiece.QUEEN:
+                return Bitboards.bishopAttacks(sq, occupied) | Bitboards.rookAttacks(sq, occupied);
+            case ChessPiece.KING:
+                return Bitboards.KING_ATTACKS[sq];
+            default:
+                return 0L;
+        }
     }
 
     public int getActivePlayer() {
@@ -90,7 +280,35 @@ public class ChessData {
     }
 
     public ChessPiece getPieceAt(int x, int y) {
-        return pieces.stream().filter(p -> p.getX() == x && p.getY() == y).findFirst().orElse(null);
+        if (!Bitboards.isOnBoard(x, y)) {
+            return null;
+        }
+        return board[Bitboards.square(x, y)];
+    }
+
+    /**
+     * Returns the piece on the given square.
+     *
+     * @param square
+     *            the square index {@code y * 8 + x}, as used by {@link Move}
+     * @return the piece, or {@code null} if the square is empty.
+     */
+    public ChessPiece getPieceAt(int square) {
+        return board[square];
+    }
+
+    /**
+     * Returns the squares of all pieces of the given player and type as a mask with bit
+     * {@code y * 8 + x} set for each piece.
+     *
+     * @param player
+     *            the owner of the pieces
+     * @param type
+     *            the piece type, e.g. {@link ChessPiece#ROOK}
+     * @return the piece mask.
+     */
+    public long getPieceMask(int player, int type) {
+        return pieceMasks[player][type];
     }
 
     public ChessPiece getPieceAt(String str) {
@@ -100,13 +318,187 @@ public class ChessData {
     public static int stringToY(String str) {
         if (str.length() < 2)
             return -1;
-        return '8' - str.charAt(1);
+        return charToY(str.charAt(1));
     }
 
     public static int stringToX(String str) {
         if (str.length() < 2)
             return -1;
-        return str.charAt(0) - 'a';
+        return charToX(str.charAt(0));
+    }
+
+    // single characters, for parsers that work on bytes instead of strings
+    public static int charToY(int c) {
+        return '8' - c;
+    }
+
+    public static int charToX(int c) {
+        return c - 'a';
+    }
+
+    /**
+     * Sets up the position described by a FEN string, e.g.
+     * {@code rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b - - 0 1}. White is player 1.
+     * Castling rights, the en passant square and the halfmove clock are ignored, as the
+     * game does not know these rules; the move number sets the turn count.
+     *
+     * @param fen
+     *            the position in Forsyth-Edwards Notation
+     * @throws IllegalArgumentException
+     *             if the string is not a valid position.
+     */
+    public void loadFen(String fen) {
+        String[] fields = fen.trim().split("\\s+");
+        String[] ranks = fields[0].split("/");
+        if (ranks.length != 8) {
+            throw new IllegalArgumentException("FEN needs 8 ranks: " + fen);
+        }
+
+        clearBoard();
+        try {
+            for (int y = 0; y < ranks.length; y++) {
+                int x = 0;
+                for (char c : ranks[y].toCharArray()) {
+                    if (c >= '1' && c <= '8') {
+                        x += c - '0';
+                        continue;
+                    }
+                    int type = FEN_PIECES.indexOf(Character.toUpperCase(c));
+                    if (type < 0 || x > 7) {
+                        throw new IllegalArgumentException("invalid rank in FEN: " + ranks[y]);
+                    }
+                    placeNewPiece(new ChessPiece(type, Character.isUpperCase(c) ? ChessPiece.PLAYER1 : ChessPiece.PLAYER2, x, y));
+                    x++;
+                }
+                if (x != 8) {
+                    throw new IllegalArgumentException("invalid rank in FEN: " + ranks[y]);
+                }
+            }
+        } finally {
+            // listeners see the pieces placed so far even if the string is invalid
+            publish(ALL_SQUARES, Move.NONE);
+        }
+
+        boolean blackToMove = fields.length > 1 && fields[1].equals("b");
+        setActivePlayer(blackToMove ? ChessPiece.PLAYER2 : ChessPiece.PLAYER1);
+
+        int moveNumber = 1;
+        if (fields.length > 5) {
+            try {
+                moveNumber = Math.max(1, Integer.parseInt(fields[5]));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("invalid move number in FEN: " + fields[5]);
+            }
+        }
+        turnCount = (moveNumber - 1) * 2 + (blackToMove ? 1 : 0);
+    }
+
+    /**
+     * Returns the position in Forsyth-Edwards Notation, see {@link #loadFen(String)}.
+     *
+     * @return the FEN string.
+     */
+    public String toFen() {
+        StringBuilder fen = new StringBuilder();
+        for (int y = 0; y < 8; y++) {
+            int empty = 0;
+            for (int x = 0; x < 8; x++) {
+                ChessPiece piece = board[Bitboards.square(x, y)];
+                if (piece == null) {
+                    empty++;
+                    continue;
+                }
+                if (empty > 0) {
+                    fen.append(empty);
+                    empty = 0;
+                }
+                char c = FEN_PIECES.charAt(piece.getType());
+                fen.append(piece.getPlayer() == ChessPiece.PLAYER1 ? c : Character.toLowerCase(c));
+            }
+            if (empty > 0) {
+                fen.append(empty);
+            }
+            if (y < 7) {
+                fen.append('/');
+            }
+        }
+        fen.append(player == ChessPiece.PLAYER2 ? " b" : " w");
+        fen.append(" - - 0 ").append(turnCount / 2 + 1);
+        return fen.toString();
+    }
+
+    /**
+     * Returns the position in a compact binary form that {@link #unpack(byte[])} reads:
+     * the occupied squares as a long, the active player as a byte, the turn count as an int,
+     * then four bits per piece in square order giving its player and type. A position with
+     * 32 pieces takes 29 bytes.
+     *
+     * @return the packed position.
+     */
+    public byte[] pack() {
+        int count = Long.bitCount(occupied);
+        byte[] packed = new byte[PACKED_HEADER + (count + 1) / 2];
+        ByteBuffer buffer = ByteBuffer.wrap(packed);
+        buffer.putLong(occupied);
+        buffer.put((byte) player);
+        buffer.putInt(turnCount);
+
+        long squares = occupied;
+        for (int i = 0; squares != 0L; i++) {
+            ChessPiece piece = board[Long.numberOfTrailingZeros(squares)];
+            int code = (piece.getPlayer() - ChessPiece.PLAYER1) * (ChessPiece.KING + 1) + piece.getType();
+            packed[PACKED_HEADER + i / 2] |= code << (i % 2 * 4);
+            squares &= squares - 1;
+        }
+        return packed;
+    }
+
+    /**
+     * Replaces the position with one written by {@link #pack()}. The move history starts
+     * empty.
+     *
+     * @param packed
+     *            the packed position
+     * @throws IllegalArgumentException
+     *             if the bytes are not a packed position; the position is not changed then.
+     */
+    public void unpack(byte[] packed) {
+        if (packed.length < PACKED_HEADER) {
+            throw new IllegalArgumentException("not a packed position: " + packed.length + " bytes");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(packed);
+        long squares = buffer.getLong();
+        int activePlayer = buffer.get();
+        int turn = buffer.getInt();
+        int count = Long.bitCount(squares);
+        if (packed.length != PACKED_HEADER + (count + 1) / 2) {
+            throw new IllegalArgumentException("not a packed position: " + packed.length + " bytes for " + count + " pieces");
+        }
+        if (activePlayer != ChessPiece.PLAYER1 && activePlayer != ChessPiece.PLAYER2) {
+            throw new IllegalArgumentException("not a packed position: player " + activePlayer);
+        }
+        if (turn < 0) {
+            throw new IllegalArgumentException("not a packed position: turn " + turn);
+        }
+        // checked before the board is cleared, so a bad position leaves it as it was
+        for (int i = 0; i < count; i++) {
+            int code = packed[PACKED_HEADER + i / 2] >>> (i % 2 * 4) & 15;
+            if (code >= 2 * (ChessPiece.KING + 1)) {
+                throw new IllegalArgumentException("not a packed position: piece code " + code);
+            }
+        }
+
+        clearBoard();
+        for (int i = 0; squares != 0L; i++) {
+            int sq = Long.numberOfTrailingZeros(squares);
+            int code = packed[PACKED_HEADER + i / 2] >>> (i % 2 * 4) & 15;
+            placeNewPiece(new ChessPiece(code % (ChessPiece.KING + 1), ChessPiece.PLAYER1 + code / (ChessPiece.KING + 1),
+                    sq & 7, sq >>> 3));
+            squares &= squares - 1;
+        }
+        setActivePlayer(activePlayer);
+        turnCount = turn;
+        publish(ALL_SQUARES, Move.NONE);
     }
 
     public boolean isValidSelection(ChessPiece piece) {
@@ -114,78 +506,357 @@ public class ChessData {
             return false;
         }
 
-        return IntStream.rangeClosed(0,7).anyMatch( x -> {
-            return IntStream.rangeClosed(0,7).anyMatch( y -> {
-                return this.isValidMove(piece, x, y);
-            });
-        });
+        return (cachedMovablePieces(this.player) & Bitboards.bit(squareOf(piece))) != 0L;
     }
 
-    public boolean isValidMoveForPiece(ChessPiece piece, int x, int y) {
+    /**
+     * Adds all moves of {@code player} that do not leave the own king in check to
+     * {@code moves}. The list is cleared first.
+     *
+     * @param player
+     *            the player whose moves to generate
+     * @param moves
+     *            the buffer to fill
+     */
+    public void generateLegalMoves(int player, MoveList moves) {
+        moves.clear();
+        long[] targets = legalTargetCache[player];
+        long movable = cachedMovablePieces(player);
+        while (movable != 0L) {
+            int from = Long.numberOfTrailingZeros(movable);
+            addMoves(from, targets[from], moves);
+            movable &= movable - 1;
+        }
+    }
 
-        if (fieldHasOwnPiece(piece.getPlayer(), x, y)) {
-            return false;
+    /**
+     * Like {@link #generateLegalMoves(int, MoveList)}, but only adds moves that capture an
+     * enemy piece.
+     *
+     * @param player
+     *            the player whose moves to generate
+     * @param moves
+     *            the buffer to fill
+     */
+    public void generateLegalCaptures(int player, MoveList moves) {
+        generateLegalMoves(player, moves, playerMasks[opponentOf(player)]);
+    }
+
+    private void generateLegalMoves(int player, MoveList moves, long targetFilter) {
+        moves.clear();
+        long pinned = getPinnedPieces(player);
+        long checkers = getCheckers(player);
+        long own = playerMasks[player];
+        while (own != 0L) {
+            int from = Long.numberOfTrailingZeros(own);
+            addMoves(from, legalTargets(from, pinned, checkers, targetFilter), moves);
+            own &= own - 1;
+        }
+    }
+
+    /**
+     * Adds all moves of {@code piece} that do not leave the own king in check to
+     * {@code moves}. The list is cleared first.
+     *
+     * @param piece
+     *            the piece whose moves to generate
+     * @param moves
+     *            the buffer to fill
+     */
+    public void generateLegalMoves(ChessPiece piece, MoveList moves) {
+        moves.clear();
+        int from = squareOf(piece);
+        addMoves(from, cachedLegalTargets(from), moves);
+    }
+
+    /**
+     * Adds all moves of {@code piece} allowed by its movement rules to {@code moves},
+     * including moves that leave the own king in check. The list is cleared first.
+     *
+     * @param piece
+     *            the piece whose moves to generate
+     * @param moves
+     *            the buffer to fill
+     */
+    public void generateMoves(ChessPiece piece, MoveList moves) {
+        moves.clear();
+        int from = squareOf(piece);
+        addMoves(from, pseudoTargets(from), moves);
+    }
+
+    private static void addMoves(int from, long targets, MoveList moves) {
+        while (targets != 0L) {
+            moves.add(Move.of(from, Long.numberOfTrailingZeros(targets)));
+            targets &= targets - 1;
+        }
+    }
+
+    private long cachedLegalTargets(int from) {
+        int player = board[from].getPlayer();
+        cachedMovablePieces(player);
+        return legalTargetCache[player][from];
+    }
+
+    // computes the legal moves of all pieces of the player once per position;
+    // selection, move validation, highlighting and checkmate detection then
+    // all read them from the cache
+    private long cachedMovablePieces(int player) {
+        if (cacheVersions[player] == version) {
+            return movablePieces[player];
+        }
+
+        long[] targets = legalTargetCache[player];
+        long pinned = getPinnedPieces(player);
+        long checkers = getCheckers(player);
+        long movable = 0L;
+        long own = playerMasks[player];
+        while (own != 0L) {
+            int from = Long.numberOfTrailingZeros(own);
+            targets[from] = legalTargets(from, pinned, checkers, -1L);
+            if (targets[from] != 0L) {
+                movable |= Bitboards.bit(from);
+            }
+            own &= own - 1;
+        }
+
+        movablePieces[player] = movable;
+        // trying moves with several kings changes the version, but
+        // leaves the position as it was
+        cacheVersions[player] = version;
+        return movable;
+    }
+
+    /**
+     * Returns whether {@code player} has a move that does not leave the own king in check.
+     *
+     * @param player
+     *            the player to look at
+     * @return whether the player can move.
+     */
+    public boolean hasLegalMove(int player) {
+        if (cacheVersions[player] == version) {
+            return movablePieces[player] != 0L;
+        }
+
+        // stops at the first piece that can move
+        long pinned = getPinnedPieces(player);
+        long checkers = getCheckers(player);
+        long own = playerMasks[player];
+        while (own != 0L) {
+            if (legalTargets(Long.numberOfTrailingZeros(own), pinned, checkers, -1L) != 0L) {
+                return true;
+            }
+            own &= own - 1;
+        }
+        return false;
+    }
+
+    // decides legality from the pins and checks on the own king, so no
+    // move has to be tried on the board
+    private long legalTargets(int from, long pinned, long checkers, long targetFilter) {
+        ChessPiece piece = board[from];
+        int player = piece.getPlayer();
+        long targets = pseudoTargets(from) & targetFilter;
+        long kings = pieceMasks[player][ChessPiece.KING];
+
+        if (kings == 0L) {
+            return targets;
+        }
+        if (Long.bitCount(kings) > 1) {
+            return triedTargets(from, targets);
+        }
+
+        int kingSq = Long.numberOfTrailingZeros(kings);
+        if (from == kingSq) {
+            // the king must not stay on a ray it is moving along, so it
+            // is taken off the board while the target squares are tested
+            int enemy = opponentOf(player);
+            long withoutKing = occupied & ~Bitboards.bit(from);
+            long safe = 0L;
+            while (targets != 0L) {
+                int to = Long.numberOfTrailingZeros(targets);
+                if (attackersOf(enemy, to, withoutKing) == 0L) {
+                    safe |= Bitboards.bit(to);
+                }
+                targets &= targets - 1;
+            }
+            return safe;
+        }
+
+        if (checkers != 0L) {
+            if (Long.bitCount(checkers) > 1) {
+                return 0L;
+            }
+            // capture the checking piece or step in between
+            int checker = Long.numberOfTrailingZeros(checkers);
+            targets &= checkers | Bitboards.BETWEEN[kingSq][checker];
+        }
+        if ((pinned & Bitboards.bit(from)) != 0L) {
+            // stay between the king and the pinning piece, or capture it; the whole
+            // line is not enough, as a pawn's double step may jump over the pinner
+            long line = Bitboards.LINE[kingSq][from];
+            long pinner = (Bitboards.rookAttacks(from, occupied) | Bitboards.bishopAttacks(from, occupied))
+                    & line & playerMasks[opponentOf(player)];
+            targets &= pinner | Bitboards.BETWEEN[kingSq][Long.numberOfTrailingZeros(pinner)];
+        }
+        return targets;
+    }
+
+    // fallback for positions with several kings of one player
+    private long triedTargets(int from, long targets) {
+        int player = board[from].getPlayer();
+        long legal = 0L;
+        while (targets != 0L) {
+            int to = Long.numberOfTrailingZeros(targets);
+            makeMove(board[from], to & 7, to >>> 3);
+            if (!isInCheck(player)) {
+                legal |= Bitboards.bit(to);
+            }
+            unmakeMove();
+            targets &= targets - 1;
+        }
+        return legal;
+    }
+
+    /**
+     * Returns the enemy pieces giving check to the king of {@code player} as a mask of
+     * squares numbered {@code y * 8 + x}.
+     *
+     * @param player
+     *            the player whose king to look at
+     * @return the squares of the checking pieces, {@code 0} if the player is not in check.
+     */
+    public long getCheckers(int player) {
+        long kings = pieceMasks[player][ChessPiece.KING];
+        long checkers = 0L;
+        while (kings != 0L) {
+            checkers |= attackersOf(opponentOf(player), Long.numberOfTrailingZeros(kings), occupied);
+            kings &= kings - 1;
+        }
+        return checkers;
+    }
+
+    /**
+     * Returns the pieces of {@code player} that may only move along the line to their own
+     * king, because they shield it from an enemy rook, bishop or queen.
+     *
+     * @param player
+     *            the player whose pieces to look at
+     * @return the squares of the pinned pieces, numbered {@code y * 8 + x}.
+     */
+    public long getPinnedPieces(int player) {
+        long kings = pieceMasks[player][ChessPiece.KING];
+        if (Long.bitCount(kings) != 1) {
+            return 0L;
+        }
+
+        int kingSq = Long.numberOfTrailingZeros(kings);
+        long[] enemy = pieceMasks[opponentOf(player)];
+        long enemies = playerMasks[opponentOf(player)];
+
+        // look through the own pieces: a slider that sees the king
+        // with exactly one own piece in between pins that piece
+        long pinners = (Bitboards.rookAttacks(kingSq, enemies) & (enemy[ChessPiece.ROOK] | enemy[ChessPiece.QUEEN]))
+                | (Bitboards.bishopAttacks(kingSq, enemies) & (enemy[ChessPiece.BISHOP] | enemy[ChessPiece.QUEEN]));
+
+        long pinned = 0L;
+        while (pinners != 0L) {
+            long between = Bitboards.BETWEEN[kingSq][Long.numberOfTrailingZeros(pinners)] & occupied;
+            if (Long.bitCount(between) == 1 && (between & playerMasks[player]) != 0L) {
+                pinned |= between;
+            }
+            pinners &= pinners - 1;
         }
+        return pinned;
+    }
+
+    /**
+     * Returns the squares attacked by the pieces of {@code player}, numbered
+     * {@code y * 8 + x}. The map is kept up to date with every move.
+     *
+     * @param player
+     *            the attacking player
+     * @return the attacked squares.
+     */
+    public long getAttackedSquares(int player) {
+        return attackMaps[player];
+    }
+
+    // the squares the piece on {@code from} may move to by its movement rules
+    private long pseudoTargets(int from) {
+        return pseudoTargets(board[from], from);
+    }
+
+    private long pseudoTargets(ChessPiece piece, int from) {
+        int player = piece.getPlayer();
+        long own = playerMasks[player];
 
         switch (piece.getType()) {
-            case ChessPiece.ROOK:
-                return isValidRookMove(piece, x, y);
+            case ChessPiece.PAWN:
+                return pawnTargets(piece, from);
+            case ChessPiece.KNIGHT:
+                return Bitboards.KNIGHT_ATTACKS[from] & ~own;
             case ChessPiece.BISHOP:
-                return isValidBishopMove(piece, x, y);
+                return Bitboards.bishopAttacks(from, occupied) & ~own;
+            case ChessPiece.ROOK:
+                return Bitboards.rookAttacks(from, occupied) & ~own;
             case ChessPiece.QUEEN:
-                return isValidQueenMove(piece, x, y);
+                return (Bitboards.bishopAttacks(from, occupied) | Bitboards.rookAttacks(from, occupied)) & ~own;
             case ChessPiece.KING:
-                return isValidKingMove(piece, x, y);
-            case ChessPiece.PAWN:
-                return isValidPawnMove(piece, x, y);
-            case ChessPiece.KNIGHT:
-                return isValidKnightMove(piece, x, y);
+                return Bitboards.KING_ATTACKS[from] & ~own;
             default:
-                return false;
+                return 0L;
         }
     }
+
+    private long pawnTargets(ChessPiece piece, int from) {
+        int player = piece.getPlayer();
+        int forward = player == ChessPiece.PLAYER1 ? -1 : 1;
+        int x = from & 7;
+        int y = from >>> 3;
+
+        long targets = Bitboards.PAWN_ATTACKS[player][from] & playerMasks[opponentOf(player)];
+        targets |= Bitboards.bit(x, y + forward) & ~occupied;
+        if (isPawnInStartingLine(piece)) {
+            targets |= Bitboards.bit(x, y + 2 * forward) & ~occupied;
+        }
+        return targets;
+    }
+
+    // looks the move up in the attack tables, so it allocates nothing
+    public boolean isValidMoveForPiece(ChessPiece piece, int x, int y) {
+        if (!Bitboards.isOnBoard(x, y)) {
+            return false;
+        }
+        return (pseudoTargets(piece, squareOf(piece)) & Bitboards.bit(x, y)) != 0L;
+    }
+
     public boolean isValidMove(ChessPiece piece, int x, int y) {
+        if (!EngineStats.ENABLED) {
+            return checkMove(piece, x, y);
+        }
+        long start = System.nanoTime();
+        boolean valid = checkMove(piece, x, y);
+        EngineStats.record(EngineStats.IS_VALID_MOVE, start);
+        return valid;
+    }
+
+    private boolean checkMove(ChessPiece piece, int x, int y) {
         boolean isValidMoveForPiece = isValidMoveForPiece(piece, x, y);
 
         if (!isValidMoveForPiece) {
             return false;
         }
 
-        // it is necessary to create a deep copy of the chessdata object
-        // i first tried to save the pieces coordinates, then move the piece
-        // then run the inCheck method, then move the piece back, but this
-        // does cause additional headaches if there is an enemy piece at
-        // the new x/y because this will produce invalid inCheck results
-        ChessData newData = new ChessData(this);
-        newData.movePieceTo(newData.getPieceAt(piece.getX(), piece.getY()), x, y);
-
         // to be valid, the move must not leave the king in check
         // this could be achieved by either moving the king or capturing the
         // piece that would put the player in check, or moving into the way of the
         // piece. also, this prevents that the king puts himself into check.
-        return !(newData.isInCheck() == piece.getPlayer());
-    }
-
-    // we explicitly pass the own player to this function,
-    // as using the player whos turn it is would produce invalid
-    // results if we are simulating the next turn of the other
-    // player (for checking that a player does not put himself
-    // into check)
-    private boolean fieldHasOwnPiece(int player, int x, int y) {
-        ChessPiece piece =  this.getPieceAt(x, y);
-        return piece != null && piece.getPlayer() == player;
+        return (cachedLegalTargets(squareOf(piece)) & Bitboards.bit(x, y)) != 0L;
     }
 
-    private boolean fieldHasEnemyPiece(int player, int x, int y) {
-        ChessPiece piece =  this.getPieceAt(x, y);
-        return piece != null && piece.getPlayer() != player;
-    }
-
-    private boolean isValidKnightMove(ChessPiece piece, int x, int y) {
-        int absDeltaX = Math.abs(piece.getX() - x);
-        int absDeltaY = Math.abs(piece.getY() - y);
-
-        return (absDeltaX == 1 && absDeltaY == 2) || (absDeltaX == 2 && absDeltaY == 1);
+    private static int squareOf(ChessPiece piece) {
+        return Bitboards.square(piece.getX(), piece.getY());
     }
 
     private boolean isPawnInStartingLine(ChessPiece piece) {
@@ -198,123 +869,370 @@ public class ChessData {
         return false;
     }
 
-    private boolean isValidPawnMove(ChessPiece piece, int x, int y) {
-        int playerModifier = 1;
-        if (piece.getPlayer() == ChessPiece.PLAYER2) {
-            playerModifier = -1;
+    public ChessPiece movePieceTo(ChessPiece piece, int x, int y) {
+        long start = EngineStats.ENABLED ? System.nanoTime() : 0L;
+        int from = squareOf(piece);
+        int to = Bitboards.square(x, y);
+        long hashBefore = hash;
+        boolean pawnMove = piece.getType() == ChessPiece.PAWN;
+        ChessPiece captured = movePiece(from, to);
+        int entry = MoveHistory.encode(Move.of(from, to), captured == null ? -1 : captured.getType());
+        history.add(pawnMove ? entry | MoveHistory.FLAG : entry, hashBefore);
+        if (EngineStats.ENABLED) {
+            EngineStats.record(EngineStats.MOVE_PIECE_TO, start);
         }
+        publish(Bitboards.bit(from) | Bitboards.bit(to), Move.of(from, to));
+        return captured;
+    }
 
-        int deltaX = (piece.getX() - x) * playerModifier;
-        int deltaY = (piece.getY() - y) * playerModifier;
+    private ChessPiece movePiece(int from, int to) {
+        turnCount++;
 
-        BiPredicate<ChessPiece, GPoint> lambda;
-        if ((lambda = pawnValidationLambdas.get(new GPoint(deltaX, deltaY))) == null) {
-            return false;
+        ChessPiece piece = board[from];
+        ChessPiece captured = board[to];
+        if (captured != null) {
+            liftPiece(captured, to);
+            removeFromPieces(captured);
         }
 
-        return lambda.test(piece, new GPoint(x, y));
+        liftPiece(piece, from);
+        piece.moveTo(to & 7, to >>> 3);
+        placePiece(piece, to);
 
+        return captured;
     }
 
-    private boolean isValidKingMove(ChessPiece piece, int x, int y) {
-        if (piece.getX() == x && piece.getY() == y) {
-            return false;
-        }
-
-        int absDeltaX = Math.abs(piece.getX() - x);
-        int absDeltaY = Math.abs(piece.getY() - y);
+    /**
+     * Adds a listener that is told about every change of the pieces made with
+     * {@link #movePieceTo(ChessPiece, int, int)}, {@link #undoMove()}, {@link #redoMove()}
+     * or by setting up a position. Moves made with {@link #makeMove(int)} while searching
+     * are not published, and copies made with {@link #ChessData(ChessData)} start without
+     * listeners. The listener is first told about all squares, so it starts with the
+     * current position.
+     *
+     * @param listener
+     *            the listener
+     */
+    public void addBoardListener(BoardListener listener) {
+        listeners = Arrays.copyOf(listeners, listeners.length + 1);
+        listeners[listeners.length - 1] = listener;
+        updatePieceCodes(ALL_SQUARES);
+        listener.boardChanged(pieceCodes, ALL_SQUARES, Move.NONE);
+    }
 
-        return absDeltaX <= 1 && absDeltaY <= 1;
+    public void removeBoardListener(BoardListener listener) {
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i] == listener) {
+                BoardListener[] remaining = Arrays.copyOf(listeners, listeners.length - 1);
+                System.arraycopy(listeners, i + 1, remaining, i, remaining.length - i);
+                listeners = remaining;
+                return;
+            }
+        }
+    }
 
+    // the piece codes are computed once per change, however many listeners there are
+    private void publish(long changedSquares, int move) {
+        if (listeners.length == 0 || changedSquares == 0L) {
+            return;
+        }
+        updatePieceCodes(changedSquares);
+        for (BoardListener listener : listeners) {
+            listener.boardChanged(pieceCodes, changedSquares, move);
+        }
     }
 
-    private boolean isValidQueenMove(ChessPiece piece, int x, int y) {
-        return isValidBishopMove(piece, x, y) || isValidRookMove(piece, x, y);
+    private void updatePieceCodes(long squares) {
+        for (; squares != 0L; squares &= squares - 1) {
+            int sq = Long.numberOfTrailingZeros(squares);
+            ChessPiece piece = board[sq];
+            pieceCodes[sq] = (byte) (piece == null ? ChessPiece.NO_PIECE : piece.getCode());
+        }
     }
 
-    // Läufer
-    private boolean isValidBishopMove(ChessPiece piece, int x, int y) {
-        return isValidRunMove(piece, 1, 1, x, y) ||
-                isValidRunMove(piece, 1, -1, x, y) ||
-                isValidRunMove(piece, -1, -1, x, y) ||
-                isValidRunMove(piece, -1, 1, x, y);
+    /**
+     * Returns the moves played with {@link #movePieceTo(ChessPiece, int, int)} since the
+     * board was set up. Moves made with {@link #makeMove(int)} are not part of it, and
+     * copies of the position start with an empty history.
+     *
+     * @return the history.
+     */
+    public MoveHistory getHistory() {
+        return this.history;
     }
 
-    // Turm
-    private boolean isValidRookMove(ChessPiece piece, int x, int y) {
-        return isValidRunMove(piece, 1, 0, x, y) ||
-                isValidRunMove(piece, -1, 0, x, y) ||
-                isValidRunMove(piece, 0, 1, x, y) ||
-                isValidRunMove(piece, 0, -1, x, y);
+    /**
+     * Returns how often the current position, with the same player to move, has occurred in
+     * the game played with {@link #movePieceTo(ChessPiece, int, int)}, counting the current
+     * occurrence. Only the moves since the last capture or pawn move are looked at, as no
+     * earlier position can come back.
+     *
+     * @return the number of occurrences, at least 1.
+     */
+    public int getRepetitions() {
+        int repetitions = 1;
+        for (int i = history.size() - 1; i >= 0; i--) {
+            if (history.getHash(i) == hash) {
+                repetitions++;
+            }
+            if (MoveHistory.isIrreversible(history.get(i))) {
+                break;
+            }
+        }
+        return repetitions;
     }
 
-    private boolean isValidRunMove(ChessPiece piece, int xOffset, int yOffset, int targetX, int targetY) {
-        int currX = piece.getX();
-        int currY = piece.getY();
+    /**
+     * Takes back the last move played with {@link #movePieceTo(ChessPiece, int, int)} and
+     * gives the turn back to the player who made it.
+     *
+     * @return whether there was a move to take back.
+     */
+    public boolean undoMove() {
+        if (!history.canUndo()) {
+            return false;
+        }
 
-        for (int i = 0; i < 8; i++) {
-            currX += xOffset;
-            currY += yOffset;
+        int entry = history.undo();
+        int from = Move.from(MoveHistory.move(entry));
+        int to = Move.to(MoveHistory.move(entry));
+        ChessPiece piece = board[to];
 
-            if (currX == targetX && currY == targetY) {
-                return true;
-            }
+        turnCount--;
+        liftPiece(piece, to);
+        piece.moveTo(from & 7, from >>> 3);
+        placePiece(piece, from);
 
-            if (this.getPieceAt(currX, currY) != null) {
-                return false;
-            }
+        int capturedType = MoveHistory.capturedType(entry);
+        if (capturedType >= 0) {
+            placeNewPiece(new ChessPiece(capturedType, opponentOf(piece.getPlayer()), to & 7, to >>> 3));
         }
-        return false;
+        setActivePlayer(piece.getPlayer());
+        publish(Bitboards.bit(from) | Bitboards.bit(to), Move.NONE);
+        return true;
     }
 
-    public ChessPiece movePieceTo(ChessPiece piece, int x, int y) {
+    /**
+     * Plays the last move taken back by {@link #undoMove()} again and passes the turn to the
+     * other player.
+     *
+     * @return whether there was a move to play again.
+     */
+    public boolean redoMove() {
+        if (!history.canRedo()) {
+            return false;
+        }
+
+        int move = MoveHistory.move(history.redo());
+        ChessPiece piece = board[Move.from(move)];
+        movePiece(Move.from(move), Move.to(move));
+        setActivePlayer(opponentOf(piece.getPlayer()));
+        publish(Bitboards.bit(Move.from(move)) | Bitboards.bit(Move.to(move)), move);
+        return true;
+    }
+
+    /**
+     * Moves {@code piece} to the given square and passes the turn to the other player,
+     * remembering everything needed to take the move back with {@link #unmakeMove()}.
+     * Moves made this way must be unmade in reverse order.
+     *
+     * @param piece
+     *            the piece to move, which must be on this board
+     * @param x
+     *            target file index
+     * @param y
+     *            target rank index
+     * @return the captured piece, or {@code null} if the target square was empty.
+     */
+    public ChessPiece makeMove(ChessPiece piece, int x, int y) {
+        if (undoCount == undoFrom.length) {
+            growUndoRecords();
+        }
+
+        int from = squareOf(piece);
+        int to = Bitboards.square(x, y);
+        ChessPiece captured = board[to];
+
+        undoFrom[undoCount] = from;
+        undoTo[undoCount] = to;
+        undoTurnCount[undoCount] = turnCount;
+        undoPlayer[undoCount] = player;
+        undoCaptured[undoCount] = captured;
+
         turnCount++;
+        if (captured != null) {
+            liftPiece(captured, to);
+            undoCapturedIndex[undoCount] = removeFromPieces(captured);
+        }
+        liftPiece(piece, from);
         piece.moveTo(x, y);
+        placePiece(piece, to);
+        togglePlayer();
 
-        ChessPiece captured = pieces
-                .stream()
-                .filter( p -> p != piece && p.getX() == x && p.getY() == y )
-                .findFirst()
-                .orElse(null);
+        undoCount++;
+        return captured;
+    }
 
-        pieces.remove(captured);
+    public ChessPiece makeMove(int move) {
+        return makeMove(board[Move.from(move)], Move.toX(move), Move.toY(move));
+    }
 
-        return captured;
+    /**
+     * Takes back the last move made with {@link #makeMove(ChessPiece, int, int)}, restoring
+     * a captured piece, the turn count and the active player.
+     */
+    public void unmakeMove() {
+        undoCount--;
+        int from = undoFrom[undoCount];
+        int to = undoTo[undoCount];
+        ChessPiece piece = board[to];
+
+        liftPiece(piece, to);
+        piece.moveTo(from & 7, from >>> 3);
+        placePiece(piece, from);
+
+        ChessPiece captured = undoCaptured[undoCount];
+        if (captured != null) {
+            placePiece(captured, to);
+            restoreToPieces(captured, undoCapturedIndex[undoCount]);
+            undoCaptured[undoCount] = null;
+        }
+
+        turnCount = undoTurnCount[undoCount];
+        setActivePlayer(undoPlayer[undoCount]);
+    }
+
+    private void growUndoRecords() {
+        int length = undoFrom.length * 2;
+        undoFrom = Arrays.copyOf(undoFrom, length);
+        undoTo = Arrays.copyOf(undoTo, length);
+        undoCapturedIndex = Arrays.copyOf(undoCapturedIndex, length);
+        undoTurnCount = Arrays.copyOf(undoTurnCount, length);
+        undoPlayer = Arrays.copyOf(undoPlayer, length);
+        undoCaptured = Arrays.copyOf(undoCaptured, length);
+    }
+
+    // moves the last piece into the gap, so removing does not shift the list;
+    // returns the index the piece had, which restoreToPieces needs
+    private int removeFromPieces(ChessPiece piece) {
+        int index = 0;
+        while (pieces[index] != piece) {
+            index++;
+        }
+        pieceCount--;
+        pieces[index] = pieces[pieceCount];
+        pieces[pieceCount] = null;
+        return index;
+    }
+
+    private void restoreToPieces(ChessPiece piece, int index) {
+        pieces[pieceCount] = pieces[index];
+        pieces[index] = piece;
+        pieceCount++;
     }
 
     public void setActivePlayer(int player) {
+        this.version++;
+        this.hash ^= Zobrist.playerKey(this.player) ^ Zobrist.playerKey(player);
         this.player = player;
     }
 
     public void togglePlayer() {
         if (this.player == ChessPiece.PLAYER1) {
-            this.player = ChessPiece.PLAYER2;
+            this.setActivePlayer(ChessPiece.PLAYER2);
         } else {
-            this.player = ChessPiece.PLAYER1;
+            this.setActivePlayer(ChessPiece.PLAYER1);
+        }
+    }
+
+    /**
+     * Returns the 64-bit Zobrist hash of the position: the pieces on their squares and the
+     * active player. It is kept up to date with every change, so reading it is free.
+     *
+     * @return the position hash.
+     */
+    public long getHash() {
+        return this.hash;
+    }
+
+    // two ChessData objects are equal if they hold the same position,
+    // regardless of the piece objects, the turn count or the history
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ChessData)) {
+            return false;
         }
+        ChessData other = (ChessData) o;
+        return this.hash == other.hash
+                && this.player == other.player
+                && Arrays.deepEquals(this.pieceMasks, other.pieceMasks);
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(this.hash);
     }
 
     public int isInCheck() {
-        return pieces
-                .stream()
-                .filter(piece -> piece.getType() == ChessPiece.KING)
-                .filter(king -> {
-                    return pieces.stream().anyMatch(p -> this.isValidMoveForPiece(p, king.getX(), king.getY()));
-                })
-                .findFirst()
-                .map(ChessPiece::getPlayer)
-                .orElse(ChessPiece.NO_PLAYER);
+        if (isInCheck(ChessPiece.PLAYER1)) {
+            return ChessPiece.PLAYER1;
+        }
+        if (isInCheck(ChessPiece.PLAYER2)) {
+            return ChessPiece.PLAYER2;
+        }
+        return ChessPiece.NO_PLAYER;
+    }
+
+    public boolean isInCheck(int player) {
+        long start = EngineStats.ENABLED ? System.nanoTime() : 0L;
+        boolean inCheck = (attackMaps[opponentOf(player)] & pieceMasks[player][ChessPiece.KING]) != 0L;
+        if (EngineStats.ENABLED) {
+            EngineStats.record(EngineStats.IS_IN_CHECK, start);
+        }
+        return inCheck;
+    }
+
+    public static int opponentOf(int player) {
+        return player == ChessPiece.PLAYER1 ? ChessPiece.PLAYER2 : ChessPiece.PLAYER1;
+    }
+
+    // looks from the target square outwards: a piece attacks the square
+    // exactly if a piece of the same kind on the square would attack it
+    private long attackersOf(int player, int sq, long occupied) {
+        long[] masks = pieceMasks[player];
+        long queens = masks[ChessPiece.QUEEN];
+
+        return (Bitboards.KNIGHT_ATTACKS[sq] & masks[ChessPiece.KNIGHT])
+                | (Bitboards.KING_ATTACKS[sq] & masks[ChessPiece.KING])
+                | (Bitboards.PAWN_ATTACKS[opponentOf(player)][sq] & masks[ChessPiece.PAWN])
+                | (Bitboards.rookAttacks(sq, occupied) & (masks[ChessPiece.ROOK] | queens))
+                | (Bitboards.bishopAttacks(sq, occupied) & (masks[ChessPiece.BISHOP] | queens));
     }
 
     public int isCheckmate() {
-        int playerInCheck = isInCheck();
+        if (!EngineStats.ENABLED) {
+            return checkmatedPlayer();
+        }
+        long start = System.nanoTime();
+        int player = checkmatedPlayer();
+        EngineStats.record(EngineStats.IS_CHECKMATE, start);
+        return player;
+    }
 
-        return pieces
-                .stream()
-                .filter(p -> p.getPlayer() == playerInCheck)
-                .filter(this::isValidSelection)
-                .mapToInt(p -> ChessPiece.NO_PLAYER)
-                .findFirst()
-                .orElse(playerInCheck);
+    private int checkmatedPlayer() {
+        // endings with a table are decided without looking at the moves
+        int value = Tablebases.probe(this);
+        if (value != Tablebase.INVALID) {
+            return value == -1 ? this.player : ChessPiece.NO_PLAYER;
+        }
+
+        int playerInCheck = isInCheck();
+        if (playerInCheck == ChessPiece.NO_PLAYER || hasLegalMove(playerInCheck)) {
+            return ChessPiece.NO_PLAYER;
+        }
+        return playerInCheck;
     }
 }
@@ -1,7 +1,5 @@
 package programming.set8.christchess;
 
-import acm.graphics.GPoint;
-
 import java.awt.*;
 import java.util.ArrayList;
 import java.util.List;
@@ -19,6 +17,9 @@ public class ChessPiece {
     public static final int PLAYER1 = 1;
     public static final int PLAYER2 = 2;
 
+    // the code of an empty square, see getCode()
+    public static final int NO_PIECE = 0;
+
     private final int type;
     private final int player;
     private int x;
@@ -39,14 +40,12 @@ public class ChessPiece {
     }
 
     public List<Point> getValidTargetSquares(ChessData data) {
-        ArrayList<Point> validTargetSquares = new ArrayList<>();
-
-        for (int x = 0; x < ChessView.columns.length; x++) {
-            for (int y = 0; y < ChessView.columns.length; y++) {
-                if (data.isValidMove(this, x, y)) {
-                    validTargetSquares.add(new Point(x, y));
-                }
-            }
+        MoveList moves = new MoveList();
+        data.generateLegalMoves(this, moves);
+
+        ArrayList<Point> validTargetSquares = new ArrayList<>(moves.size());
+        for (int i = 0; i < moves.size(); i++) {
+            validTargetSquares.add(new Point(Move.toX(moves.get(i)), Move.toY(moves.get(i))));
         }
         return validTargetSquares;
     }
@@ -67,6 +66,24 @@ public class ChessPiece {
         return this.type;
     }
 
+    /**
+     * Returns the player and type of this piece in one number, {@code player << 3 | (type + 1)},
+     * which is never {@link #NO_PIECE}.
+     *
+     * @return the piece code.
+     */
+    public int getCode() {
+        return player << 3 | (type + 1);
+    }
+
+    public static int typeOf(int code) {
+        return (code & 7) - 1;
+    }
+
+    public static int playerOf(int code) {
+        return code >>> 3;
+    }
+
     public void moveTo(int x, int y) {
         this.x = x;
         this.y = y;
@@ -0,0 +1,18 @@
+package programming.set8.christchess;
+
+/**
+ * A player that chooses its moves without user input.
+ */
+public interface ChessPlayer {
+
+    /**
+     * Chooses a move for the active player of the given position. The position may be
+     * changed while choosing, but must be restored before returning.
+     *
+     * @param data
+     *            the current position
+     * @return the chosen move, encoded by {@link Move}, or {@link Move#NONE} if there is
+     *         no legal move.
+     */
+    int selectMove(ChessData data);
+}
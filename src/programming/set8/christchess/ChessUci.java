@@ -0,0 +1,368 @@
+package programming.set8.christchess;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A text front end for the chess engine following the UCI protocol: commands are read
+ * line by line from standard input, answers are written to standard output. It needs no
+ * window, so many positions can be analysed by one running process.
+ *
+ * Supported commands: {@code uci}, {@code isready}, {@code ucinewgame},
+ * {@code setoption name Threads|Hash value <n>}, {@code setoption name BookFile value <file>},
+ * {@code setoption name TablebasePath value <directory>},
+ * {@code position startpos|fen <fen> [moves ...]},
+ * {@code go [movetime <ms>] [wtime <ms>] [btime <ms>] [winc <ms>] [binc <ms>]
+ * [movestogo <n>] [depth <n>] [infinite]}, {@code stop} and {@code quit}. Moves are
+ * written as start and target square, e.g. {@code e2e4}.
+ */
+public class ChessUci {
+
+    private static final int DEFAULT_HASH_MEGABYTES = 64;
+
+    private final BufferedReader in;
+    private final PrintStream out;
+
+    // runs one search at a time, so the reading thread can answer stop and isready
+    private final ExecutorService searchThread = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "uci-search");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private ChessData position = startPosition();
+    private int threads = 1;
+    private int hashMegabytes = DEFAULT_HASH_MEGABYTES;
+    private ParallelSearch search;
+    private OpeningBook book;
+    private final Random bookRandom = new Random();
+
+    // released by stop; an infinite search holds its best move back until then
+    private volatile CountDownLatch stopSignal = new CountDownLatch(0);
+
+    public ChessUci(BufferedReader in, PrintStream out) {
+        this.in = in;
+        this.out = out;
+    }
+
+    public static void main(String[] args) throws IOException {
+        new ChessUci(new BufferedReader(new InputStreamReader(System.in)), System.out).run();
+    }
+
+    public void run() throws IOException {
+        String line;
+        while ((line = in.readLine()) != null) {
+            String[] tokens = line.trim().split("\\s+");
+            switch (tokens[0]) {
+                case "uci":
+                    send("id name Christchess");
+                    send("option name Threads type spin default 1 min 1 max 256");
+                    send("option name Hash type spin default " + DEFAULT_HASH_MEGABYTES + " min 1 max 4096");
+                    send("option name BookFile type string default <empty>");
+                    send("option name TablebasePath type string default <empty>");
+                    send("uciok");
+                    break;
+                case "isready":
+                    send("readyok");
+                    break;
+                case "ucinewgame":
+                    waitForSearch();
+                    search().clearTable();
+                    position = startPosition();
+                    break;
+                case "setoption":
+                    waitForSearch();
+                    setOption(tokens);
+                    break;
+                case "position":
+                    waitForSearch();
+                    setPosition(tokens);
+                    break;
+                case "go":
+                    waitForSearch();
+                    go(tokens);
+                    break;
+                case "stop":
+                    stopSignal.countDown();
+                    if (search != null) {
+                        search.stop();
+                    }
+                    break;
+                case "quit":
+                    stopSignal.countDown();
+                    if (search != null) {
+                        search.stop();
+                        search.shutdown();
+                    }
+                    searchThread.shutdownNow();
+                    // standard output belongs to the protocol
+                    EngineStats.printReport(System.err);
+                    return;
+                default:
+                    if (!tokens[0].isEmpty()) {
+                        send("info string unknown command " + tokens[0]);
+                    }
+            }
+        }
+    }
+
+    private void setOption(String[] tokens) {
+        String name = valueAfter(tokens, "name");
+        String value = valueAfter(tokens, "value");
+        if (name == null || value == null) {
+            return;
+        }
+        if (name.equalsIgnoreCase("BookFile")) {
+            setBook(value);
+            return;
+        }
+        if (name.equalsIgnoreCase("TablebasePath")) {
+            setTablebases(value);
+            return;
+        }
+        try {
+            if (name.equalsIgnoreCase("Threads")) {
+                threads = Math.max(1, Integer.parseInt(value));
+            } else if (name.equalsIgnoreCase("Hash")) {
+                hashMegabytes = Math.max(1, Integer.parseInt(value));
+            } else {
+                return;
+            }
+        } catch (NumberFormatException e) {
+            send("info string invalid value " + value + " for " + name);
+            return;
+        }
+        // created again with the new settings on the next go
+        if (search != null) {
+            search.shutdown();
+            search = null;
+        }
+    }
+
+    private void setPosition(String[] tokens) {
+        int i = 1;
+        if (i < tokens.length && tokens[i].equals("startpos")) {
+            position = startPosition();
+            i++;
+        } else if (i < tokens.length && tokens[i].equals("fen")) {
+            StringBuilder fen = new StringBuilder();
+            for (i++; i < tokens.length && !tokens[i].equals("moves"); i++) {
+                fen.append(tokens[i]).append(' ');
+            }
+            ChessData data = new ChessData();
+            try {
+                data.loadFen(fen.toString());
+            } catch (IllegalArgumentException e) {
+                send("info string invalid fen " + e.getMessage());
+                return;
+            }
+            position = data;
+        } else {
+            send("info string unsupported position " + (i < tokens.length ? tokens[i] : ""));
+            return;
+        }
+
+        if (i < tokens.length && tokens[i].equals("moves")) {
+            for (i++; i < tokens.length; i++) {
+                if (!playMove(position, tokens[i])) {
+                    send("info string illegal move " + tokens[i]);
+                    return;
+                }
+            }
+        }
+    }
+
+    private void setBook(String file) {
+        if (file.isEmpty() || file.equals("<empty>")) {
+            book = null;
+            return;
+        }
+        try {
+            book = OpeningBook.open(Paths.get(file));
+        } catch (IOException e) {
+            book = null;
+            send("info string cannot open book " + file);
+        }
+    }
+
+    private void setTablebases(String directory) {
+        Tablebases.clear();
+        if (directory.isEmpty() || directory.equals("<empty>")) {
+            return;
+        }
+        try {
+            send("info string " + Tablebases.loadAll(Paths.get(directory)) + " endgame tables loaded");
+        } catch (IOException e) {
+            send("info string cannot load endgame tables from " + directory);
+        }
+    }
+
+    private void go(String[] tokens) {
+        if (book != null && !contains(tokens, "infinite")) {
+            int move = book.selectMove(position, bookRandom);
+            if (move != Move.NONE) {
+                send("info string book move");
+                send("bestmove " + Move.toString(move));
+                return;
+            }
+        }
+
+        int player = position.getActivePlayer();
+        long millis = Search.NO_TIME_LIMIT;
+        int depth = Search.MAX_PLY;
+
+        try {
+            Long moveTime = numberAfter(tokens, "movetime");
+            Long time = numberAfter(tokens, player == ChessPiece.PLAYER1 ? "wtime" : "btime");
+            Long increment = numberAfter(tokens, player == ChessPiece.PLAYER1 ? "winc" : "binc");
+            Long movesToGo = numberAfter(tokens, "movestogo");
+            Long maxDepth = numberAfter(tokens, "depth");
+
+            if (moveTime != null) {
+                millis = moveTime;
+            } else if (time != null) {
+                // spread the remaining time over the moves still to play
+                long inc = increment == null ? 0 : increment;
+                long moves = movesToGo == null ? 30 : Math.max(1, movesToGo);
+                millis = Math.max(1, Math.min(time / moves + inc / 2, time - 50));
+            }
+            if (maxDepth != null) {
+                depth = (int) Math.max(1, Math.min(Search.MAX_PLY, maxDepth));
+            }
+        } catch (NumberFormatException e) {
+            send("info string invalid value " + e.getMessage());
+            return;
+        }
+        boolean infinite = contains(tokens, "infinite");
+        CountDownLatch stopped = new CountDownLatch(infinite ? 1 : 0);
+        stopSignal = stopped;
+
+        ParallelSearch parallelSearch = search();
+        parallelSearch.clearStop();
+        ChessData data = new ChessData(position);
+        long searchMillis = millis;
+        int searchDepth = depth;
+        searchThread.execute(() -> {
+            long start = System.nanoTime();
+            int move = parallelSearch.findBestMove(data, searchMillis, searchDepth);
+            long elapsed = Math.max(1, (System.nanoTime() - start) / 1_000_000L);
+            send("info depth " + parallelSearch.getCompletedDepth()
+                    + " score " + scoreToString(parallelSearch.getScore())
+                    + " nodes " + parallelSearch.getNodes()
+                    + " time " + elapsed
+                    + " nps " + parallelSearch.getNodes() * 1000 / elapsed);
+            // an infinite search may end early, at a mate or the maximum depth
+            try {
+                stopped.await();
+            } catch (InterruptedException e) {
+                return;
+            }
+            send("bestmove " + (move == Move.NONE ? "0000" : Move.toString(move)));
+        });
+    }
+
+    // stops a running search, as a command that changes its settings or position
+    // ends it, and blocks until it has sent its best move
+    private void waitForSearch() {
+        stopSignal.countDown();
+        if (search != null) {
+            search.stop();
+        }
+        try {
+            searchThread.submit(() -> { }).get();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private ParallelSearch search() {
+        if (search == null) {
+            search = new ParallelSearch(threads, new TranspositionTable(hashMegabytes));
+        }
+        return search;
+    }
+
+    private static String scoreToString(int score) {
+        if (Math.abs(score) >= Search.MATE - Search.MAX_PLY) {
+            int plies = Search.MATE - Math.abs(score);
+            return "mate " + (score > 0 ? (plies + 1) / 2 : -(plies + 1) / 2);
+        }
+        return "cp " + score;
+    }
+
+    private static ChessData startPosition() {
+        ChessData data = new ChessData();
+        data.initNewGame();
+        return data;
+    }
+
+    /**
+     * Plays a move given as start and target square, e.g. {@code e2e4}, for the active
+     * player and passes the turn.
+     *
+     * @param data
+     *            the position to play the move in
+     * @param move
+     *            the move in coordinate notation
+     * @return whether the move was legal and has been played.
+     */
+    static boolean playMove(ChessData data, String move) {
+        if (move.length() < 4) {
+            return false;
+        }
+        ChessPiece piece = data.getPieceAt(move);
+        int x = ChessData.stringToX(move.substring(2));
+        int y = ChessData.stringToY(move.substring(2));
+        if (!data.isValidSelection(piece) || !data.isValidMove(piece, x, y)) {
+            return false;
+        }
+        data.movePieceTo(piece, x, y);
+        data.togglePlayer();
+        return true;
+    }
+
+    private static boolean contains(String[] tokens, String name) {
+        for (String token : tokens) {
+            if (token.equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String valueAfter(String[] tokens, String name) {
+        for (int i = 0; i < tokens.length - 1; i++) {
+            if (tokens[i].equals(name)) {
+                return tokens[i + 1];
+            }
+        }
+        return null;
+    }
+
+    // the number after a parameter name, or null if the parameter is missing
+    private static Long numberAfter(String[] tokens, String name) {
+        String value = valueAfter(tokens, name);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Long.valueOf(value);
+        } catch (NumberFormatException e) {
+            throw new NumberFormatException(name + " " + value);
+        }
+    }
+
+    private void send(String line) {
+        synchronized (out) {
+            out.println(line);
+            out.flush();
+        }
+    }
+}
@@ -2,12 +2,22 @@ package programming.set8.christchess;
 
 import acm.graphics.*;
 
+import javax.swing.SwingUtilities;
 import java.awt.*;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.IntStream;
 
-public class ChessView {
+/**
+ * Draws a chess board and its pieces on a canvas. As a {@link BoardListener} it redraws only
+ * the squares of a change; added to a board through a {@link CoalescingBoardListener} on the
+ * event thread, it keeps up with the game however fast moves are played.
+ */
+public class ChessView implements BoardListener {
 
     private final GCanvas gc;
     private final double chessfieldWidth;
@@ -15,64 +25,185 @@ public class ChessView {
     public static String[] columns = {"A", "B", "C", "D", "E", "F", "G", "H"};
     public static String[] rows = {"8", "7", "6", "5", "4", "3", "2", "1" };
 
+    // the piece codes of ChessPiece.getCode() range below this
+    private static final int PIECE_CODES = 3 << 3;
+
     private final Font labelFont;
+    private final Font pieceFont;
+
+    // one label per square, created once and changed only when the piece on
+    // its square changes; displayed holds the code of the piece each label shows
+    private final GLabel[] pieceLabels = new GLabel[Bitboards.SQUARES];
+    private final int[] displayed = new int[Bitboards.SQUARES];
 
-    private ArrayList<GObject> pieceObjects = new ArrayList<>();
+    // the glyph and its horizontal offset in the square, per piece code
+    private final String[] glyphs = new String[PIECE_CODES];
+    private final double[] glyphOffsets = new double[PIECE_CODES];
 
     public ArrayList<ChessObject<GRect>> squares = new ArrayList<>();
 
+    // computes move highlights away from the thread that calls the view
+    private final ExecutorService highlighter = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "chess-highlights");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // counts the requested highlights; results of an older request are dropped
+    private final AtomicInteger highlightGeneration = new AtomicInteger();
+    private Future<?> pendingHighlight;
+
     public ChessView(GCanvas gc) {
         this.gc = gc;
         this.colNameWidth = ((double) Math.min(gc.getHeight(), gc.getWidth())) * 0.1;
         this.chessfieldWidth = ((double) Math.min(gc.getHeight(), gc.getWidth()) - colNameWidth * 2) / ChessView.columns.length;
         labelFont = new Font(null, 0 , (int)(chessfieldWidth * 0.3));
+        pieceFont = Font.decode("SansSerif-" + (int)Math.floor(chessfieldWidth * 0.9));
     }
 
     public void init(ChessData data) {
         gc.removeAll();
         drawLabels();
         drawChessboard();
+        createPieceLabels();
         update(data);
     }
 
+    /**
+     * Shows the pieces of {@code data}. Only the labels of squares whose piece differs
+     * from the one shown are changed, so a move touches two or three labels.
+     *
+     * @param data
+     *            the position to show
+     */
     public void update(ChessData data) {
-        Iterator<GObject> i = gc.iterator();
-        while (i.hasNext()) {
-            GObject object = i.next();
-            if (pieceObjects.contains(object)) {
-                i.remove();
+        long start = EngineStats.ENABLED ? System.nanoTime() : 0L;
+        for (int sq = 0; sq < Bitboards.SQUARES; sq++) {
+            ChessPiece piece = data.getPieceAt(sq);
+            int code = piece == null ? ChessPiece.NO_PIECE : piece.getCode();
+            if (displayed[sq] != code) {
+                showPiece(sq, code);
             }
         }
-        pieceObjects.clear();
-        data.getPieces().forEach(this::drawPiece);
+        if (EngineStats.ENABLED) {
+            EngineStats.record(EngineStats.VIEW_UPDATE, start);
+        }
     }
 
-    public void updateValidMoves(ChessData data, ChessPiece piece) {
-        for (ChessObject<GRect> square : squares) {
-            GRect squareObject = square.getObject();
-            if (piece == null || !data.isValidMove(piece, square.getX(), square.getY())) {
-                squareObject.setFillColor(getSquareColor(square.getY(), square.getX()));
-                continue;
+    @Override
+    public void boardChanged(byte[] pieceCodes, long changedSquares, int move) {
+        long start = EngineStats.ENABLED ? System.nanoTime() : 0L;
+        for (long squares = changedSquares; squares != 0L; squares &= squares - 1) {
+            int sq = Long.numberOfTrailingZeros(squares);
+            if (displayed[sq] != pieceCodes[sq]) {
+                showPiece(sq, pieceCodes[sq]);
             }
+        }
+        if (EngineStats.ENABLED) {
+            EngineStats.record(EngineStats.VIEW_UPDATE, start);
+        }
+    }
 
-            if (data.getPieceAt(square.getX(), square.getY()) == null) {
-                squareObject.setFillColor(Color.GREEN);
-            } else {
-                squareObject.setFillColor(Color.RED);
-            }
+    private void createPieceLabels() {
+        Arrays.fill(displayed, ChessPiece.NO_PIECE);
+        for (int sq = 0; sq < Bitboards.SQUARES; sq++) {
+            GLabel label = new GLabel("");
+            label.setFont(pieceFont);
+            label.setVisible(false);
+            gc.add(label, colNameWidth + chessfieldWidth * (sq & 7), colNameWidth + chessfieldWidth * (sq >>> 3));
+            pieceLabels[sq] = label;
         }
     }
 
-    public void drawPiece(ChessPiece piece) {
-        String unicodeChar = piece.toString();
+    private void showPiece(int sq, int code) {
+        GLabel label = pieceLabels[sq];
+        displayed[sq] = code;
+        if (code == ChessPiece.NO_PIECE) {
+            label.setVisible(false);
+            return;
+        }
 
-        GLabel labelPiece = new GLabel(unicodeChar);
-        labelPiece.setFont(Font.decode("SansSerif-" + (int)Math.floor(chessfieldWidth * 0.9)));
-        pieceObjects.add(labelPiece);
+        if (glyphs[code] == null) {
+            String[] pieces = ChessPiece.playerOf(code) == ChessPiece.PLAYER1 ? ChessPiece.pieces_player1
+                    : ChessPiece.pieces_player2;
+            label.setLabel(pieces[ChessPiece.typeOf(code)]);
+            glyphs[code] = label.getLabel();
+            glyphOffsets[code] = elementHorizontalCenter(label, chessfieldWidth);
+        } else {
+            label.setLabel(glyphs[code]);
+        }
+        label.setLocation(colNameWidth + chessfieldWidth * (sq & 7) + glyphOffsets[code],
+                colNameWidth + chessfieldWidth * (sq >>> 3) + elementVerticalCenter(label, chessfieldWidth));
+        label.setVisible(true);
+    }
 
-        gc.add(labelPiece,
-                colNameWidth + chessfieldWidth * piece.getX() + elementHorizontalCenter(labelPiece, chessfieldWidth),
-                colNameWidth + chessfieldWidth * piece.getY() + elementVerticalCenter(labelPiece, chessfieldWidth));
+    /**
+     * Highlights the squares {@code piece} may move to, or removes the highlights if
+     * {@code piece} is {@code null}. The moves are computed in the background on a copy of
+     * {@code data}, and the squares are coloured on the event thread once they are known,
+     * so the caller does not wait. A newer call cancels the highlights of an older one.
+     *
+     * @param data
+     *            the current position
+     * @param piece
+     *            the selected piece, or {@code null}
+     */
+    public void updateValidMoves(ChessData data, ChessPiece piece) {
+        int generation = highlightGeneration.incrementAndGet();
+        if (pendingHighlight != null) {
+            pendingHighlight.cancel(false);
+            pendingHighlight = null;
+        }
+        if (piece == null) {
+            applyHighlights(generation, 0L, 0L);
+            return;
+        }
+
+        // the snapshot is taken here, as the position may change while the
+        // highlights are computed
+        ChessData snapshot = new ChessData(data);
+        ChessPiece selected = snapshot.getPieceAt(piece.getX(), piece.getY());
+        pendingHighlight = highlighter.submit(() -> {
+            if (highlightGeneration.get() != generation) {
+                return;
+            }
+            MoveList moves = new MoveList();
+            snapshot.generateLegalMoves(selected, moves);
+            long targets = 0L;
+            long captures = 0L;
+            for (int i = 0; i < moves.size(); i++) {
+                int to = Move.to(moves.get(i));
+                targets |= Bitboards.bit(to);
+                if (snapshot.getPieceAt(to) != null) {
+                    captures |= Bitboards.bit(to);
+                }
+            }
+            applyHighlights(generation, targets, captures);
+        });
+    }
+
+    // colours all squares in one batch on the event thread, unless a newer
+    // highlight was requested in the meantime
+    private void applyHighlights(int generation, long targets, long captures) {
+        SwingUtilities.invokeLater(() -> {
+            if (highlightGeneration.get() != generation) {
+                return;
+            }
+            for (ChessObject<GRect> square : squares) {
+                long bit = Bitboards.bit(square.getX(), square.getY());
+                Color color;
+                if ((captures & bit) != 0L) {
+                    color = Color.RED;
+                } else if ((targets & bit) != 0L) {
+                    color = Color.GREEN;
+                } else {
+                    color = getSquareColor(square.getY(), square.getX());
+                }
+                if (!color.equals(square.getObject().getFillColor())) {
+                    square.getObject().setFillColor(color);
+                }
+            }
+        });
     }
 
     private Color getSquareColor(int row, int column) {
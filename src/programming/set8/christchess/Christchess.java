@@ -1,14 +1,32 @@
 package programming.set8.christchess;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import javax.swing.SwingUtilities;
+
 import acm.graphics.GCanvas;
 import acm.program.GraphicsProgram;
 
 /**
  * This class controls a simplified chess game.
+ *
+ * Either side may be played by the computer, by passing the parameters
+ * {@code white=computer} or {@code black=computer}. The parameter {@code movetime}
+ * sets the computer's time per move in milliseconds, {@code threads} the number of
+ * threads it searches with. The parameter {@code book} names an opening book file the
+ * computer plays from before it starts searching, the parameter {@code tables} a directory of
+ * endgame tables, see {@link Tablebases}.
+ *
+ * Instead of selecting a piece, a player may type {@code u} to take back the last move or
+ * {@code r} to play it again. With the parameter {@code journal}, every move is appended to
+ * the given file, and a game found in it is resumed on start.
  */
 @SuppressWarnings("serial")
 public class Christchess extends GraphicsProgram {
 
+    private static final long DEFAULT_MOVE_TIME = 2000;
+
     @Override
     public void run() {
         // Create the view using the programs canvas and
@@ -22,52 +40,180 @@ public class Christchess extends GraphicsProgram {
         // initialize a game.
         ChessData chessData = new ChessData();
         chessData.initNewGame();
+        MoveJournal journal = openJournal(chessData);
         chessView.init(chessData);
+        // the view draws on the event thread, merging the moves it has not drawn yet
+        chessData.addBoardListener(new CoalescingBoardListener(SwingUtilities::invokeLater, chessView));
 
-        // Main game loop
-        do {
+        loadTablebases();
+
+        // Players not played by a human, indexed by player.
+        ChessPlayer[] computerPlayers = new ChessPlayer[3];
+        computerPlayers[ChessPiece.PLAYER1] = createPlayer(getParameter("white"));
+        computerPlayers[ChessPiece.PLAYER2] = createPlayer(getParameter("black"));
+
+        // Main game loop; a game resumed from the journal may already be over
+        int result = GameTermination.check(chessData);
+        while (result == GameTermination.ONGOING) {
             ChessPiece piece = null;
             String moveStr;
             int x = -1;
             int y = -1;
-            do {
-                // Ask the user to select a piece.
+
+            ChessPlayer computer = computerPlayers[chessData.getActivePlayer()];
+            if (computer != null) {
+                int move = computer.selectMove(chessData);
+                if (move == Move.NONE) {
+                    println(playerName(chessData.getActivePlayer()) + " has no legal move.");
+                    return;
+                }
+                piece = chessData.getPieceAt(Move.from(move));
+                x = Move.toX(move);
+                y = Move.toY(move);
+                println(playerName(chessData.getActivePlayer()) + " plays " + Move.toString(move));
+            } else {
                 do {
-                    String selectStr = readLine((chessData.getActivePlayer() == ChessPiece.PLAYER1 ? "White" : "Black") + ", select a piece: ");
-                    piece = chessData.getPieceAt(selectStr);
-                } while (!chessData.isValidSelection(piece));
+                    // Ask the user to select a piece.
+                    do {
+                        String selectStr = readLine(playerName(chessData.getActivePlayer()) + ", select a piece: ");
+                        if (changeHistory(selectStr, chessData, computerPlayers, journal)) {
+                            piece = null;
+                            break;
+                        }
+                        piece = chessData.getPieceAt(selectStr);
+                    } while (!chessData.isValidSelection(piece));
+                    if (piece == null) {
+                        break;
+                    }
 
-                // Display which squares are valid moves.
-                chessView.updateValidMoves(chessData, piece);
+                    // Display which squares are valid moves.
+                    chessView.updateValidMoves(chessData, piece);
 
-                // Ask the user where to move the selected piece.
-                do {
-                    moveStr = readLine("Move " + piece + " to: ");
-                    if (moveStr.equals("c")) break;
-                    x = ChessData.stringToX(moveStr);
-                    y = ChessData.stringToY(moveStr);
-                } while (!chessData.isValidMove(piece, x, y));
+                    // Ask the user where to move the selected piece.
+                    do {
+                        moveStr = readLine("Move " + piece + " to: ");
+                        if (moveStr.equals("c")) break;
+                        x = ChessData.stringToX(moveStr);
+                        y = ChessData.stringToY(moveStr);
+                    } while (!chessData.isValidMove(piece, x, y));
 
-                // Reset the visual for the valid moves.
-                chessView.updateValidMoves(chessData, null);
+                    // Reset the visual for the valid moves.
+                    chessView.updateValidMoves(chessData, null);
 
-            } while (moveStr.equals("c"));
+                } while (moveStr.equals("c"));
+
+                if (piece == null) {
+                    // a move was taken back or played again
+                    continue;
+                }
+            }
 
             // Move the piece and check for captured pieces.
             ChessPiece capturedPiece = chessData.movePieceTo(piece, x, y);
             if (capturedPiece != null) {
                 println("Capture: " + piece + " captures " + capturedPiece);
             }
+            writeJournal(journal, chessData, -1);
 
-            // Change the player and update the board.
+            // Change the player; the view follows the board by itself.
             chessData.togglePlayer();
-            chessView.update(chessData);
 
-            // Repeat until a player is checkmate.
-        } while (chessData.isCheckmate() == ChessPiece.NO_PLAYER);
-        println("Player " +
-                (chessData.isCheckmate() == ChessPiece.PLAYER1 ? "White" : "Black") +
-                " is checkmate.");
+            // Repeat until the game is over.
+            result = GameTermination.check(chessData);
+        }
+        println(GameTermination.describe(result, chessData.getActivePlayer()));
+    }
+
+    // u takes back moves until a human is to move, r plays them again
+    private boolean changeHistory(String command, ChessData data, ChessPlayer[] computerPlayers, MoveJournal journal) {
+        boolean undo = command.equals("u");
+        if (!undo && !command.equals("r")) {
+            return false;
+        }
+
+        boolean changed = false;
+        do {
+            if (undo ? !data.undoMove() : !data.redoMove()) {
+                break;
+            }
+            writeJournal(journal, data, undo ? MoveJournal.UNDO : MoveJournal.REDO);
+            changed = true;
+        } while (computerPlayers[data.getActivePlayer()] != null);
+
+        if (!changed) {
+            println(undo ? "There is no move to take back." : "There is no move to play again.");
+        }
+        return true;
+    }
+
+    private MoveJournal openJournal(ChessData data) {
+        String file = getParameter("journal");
+        if (file == null) {
+            return null;
+        }
+        try {
+            int records = MoveJournal.replay(Paths.get(file), data);
+            if (records > 0) {
+                println("Resumed the game from " + file + " after " + data.getHistory().size() + " moves.");
+            }
+            return new MoveJournal(Paths.get(file));
+        } catch (IOException e) {
+            println("Cannot use the journal " + file + ": " + e.getMessage());
+            data.initNewGame();
+            return null;
+        }
+    }
+
+    private void loadTablebases() {
+        String directory = getParameter("tables");
+        if (directory == null) {
+            return;
+        }
+        try {
+            println(Tablebases.loadAll(Paths.get(directory)) + " endgame tables loaded from " + directory);
+        } catch (IOException e) {
+            println("Cannot load the endgame tables in " + directory + ": " + e.getMessage());
+        }
+    }
+
+    // writes the last move, or the given marker record
+    private void writeJournal(MoveJournal journal, ChessData data, int marker) {
+        if (journal == null) {
+            return;
+        }
+        try {
+            if (marker == -1) {
+                journal.appendLastMove(data);
+            } else {
+                journal.append(marker);
+            }
+        } catch (IOException e) {
+            println("Cannot write the journal: " + e.getMessage());
+        }
+    }
+
+    private static String playerName(int player) {
+        return player == ChessPiece.PLAYER1 ? "White" : "Black";
+    }
+
+    private ChessPlayer createPlayer(String type) {
+        if (!"computer".equals(type)) {
+            return null;
+        }
+        String moveTime = getParameter("movetime");
+        String threads = getParameter("threads");
+        ChessPlayer player = new ComputerPlayer(moveTime == null ? DEFAULT_MOVE_TIME : Long.parseLong(moveTime),
+                threads == null ? 1 : Integer.parseInt(threads));
+
+        String book = getParameter("book");
+        if (book != null) {
+            try {
+                player = new BookPlayer(OpeningBook.open(Paths.get(book)), player, System.nanoTime());
+            } catch (IOException e) {
+                println("Cannot open the opening book " + book + ": " + e.getMessage());
+            }
+        }
+        return player;
     }
 
 }
\ No newline at end of file
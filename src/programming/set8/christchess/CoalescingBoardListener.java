@@ -0,0 +1,83 @@
+package programming.set8.christchess;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Passes board changes on to another listener through an executor, for example the event
+ * thread. Changes that arrive while a delivery is waiting or running are merged into one,
+ * so a listener that cannot keep up is called once with the union of the changed squares
+ * rather than once per change.
+ *
+ * The wrapped listener is never called by two threads at the same time, whatever the
+ * executor. Its move is the last one played, or {@link Move#NONE} if the last change was
+ * not a move.
+ */
+public class CoalescingBoardListener implements BoardListener {
+
+    private final Executor executor;
+    private final BoardListener target;
+    private final Runnable delivery = this::deliver;
+
+    // the pieces as of the last change, filled in by the board's thread
+    private final byte[] pending = new byte[Bitboards.SQUARES];
+    private long pendingSquares;
+    private int pendingMove = Move.NONE;
+    private boolean scheduled;
+
+    // the pieces handed to the target, only touched while delivering
+    private final byte[] delivered = new byte[Bitboards.SQUARES];
+
+    public CoalescingBoardListener(Executor executor, BoardListener target) {
+        this.executor = executor;
+        this.target = target;
+    }
+
+    @Override
+    public void boardChanged(byte[] pieceCodes, long changedSquares, int move) {
+        synchronized (pending) {
+            copySquares(pieceCodes, pending, changedSquares);
+            pendingSquares |= changedSquares;
+            pendingMove = move;
+            if (scheduled) {
+                return;
+            }
+            scheduled = true;
+        }
+        executor.execute(delivery);
+    }
+
+    // stays scheduled until no change is left, so deliveries never overlap
+    private void deliver() {
+        long squares;
+        int move;
+        synchronized (pending) {
+            squares = pendingSquares;
+            move = pendingMove;
+            copySquares(pending, delivered, squares);
+            pendingSquares = 0L;
+        }
+
+        try {
+            target.boardChanged(delivered, squares, move);
+        } finally {
+            synchronized (pending) {
+                if (pendingSquares == 0L) {
+                    scheduled = false;
+                    return;
+                }
+            }
+            executor.execute(delivery);
+        }
+    }
+
+    private static void copySquares(byte[] from, byte[] to, long squares) {
+        if (squares == -1L) {
+            System.arraycopy(from, 0, to, 0, from.length);
+            return;
+        }
+        for (; squares != 0L; squares &= squares - 1) {
+            int sq = Long.numberOfTrailingZeros(squares);
+            to[sq] = from[sq];
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package programming.set8.christchess;
+
+/**
+ * A player that searches for its moves with a fixed time budget per move.
+ */
+public class ComputerPlayer implements ChessPlayer {
+
+    private final ParallelSearch search;
+    private final long millisPerMove;
+    private final int maxDepth;
+
+    public ComputerPlayer(long millisPerMove) {
+        this(millisPerMove, 1);
+    }
+
+    public ComputerPlayer(long millisPerMove, int threads) {
+        this(millisPerMove, Search.MAX_PLY, new ParallelSearch(threads, new TranspositionTable(16)));
+    }
+
+    public ComputerPlayer(long millisPerMove, int maxDepth, ParallelSearch search) {
+        this.millisPerMove = millisPerMove;
+        this.maxDepth = maxDepth;
+        this.search = search;
+    }
+
+    @Override
+    public int selectMove(ChessData data) {
+        return search.findBestMove(data, millisPerMove, maxDepth);
+    }
+
+    public ParallelSearch getSearch() {
+        return search;
+    }
+}
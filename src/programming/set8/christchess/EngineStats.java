@@ -0,0 +1,182 @@
+package programming.set8.christchess;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counts the calls of the rules engine's hot methods and how long they take, in a
+ * histogram of powers of two nanoseconds per operation, and how often positions are copied.
+ *
+ * Switched on with {@code -Dchristchess.stats=true}, which also publishes the numbers as
+ * the MXBean {@code programming.set8.christchess:type=EngineStats}. When switched off,
+ * {@link #ENABLED} is a constant {@code false} and the JIT compiler removes the
+ * instrumentation from the callers, so it costs nothing.
+ */
+public final class EngineStats implements EngineStatsMXBean {
+
+    public static final boolean ENABLED = Boolean.getBoolean("christchess.stats");
+
+    public static final int IS_VALID_MOVE = 0;
+    public static final int IS_IN_CHECK = 1;
+    public static final int IS_CHECKMATE = 2;
+    public static final int MOVE_PIECE_TO = 3;
+    public static final int VIEW_UPDATE = 4;
+
+    private static final String[] NAMES = { "isValidMove", "isInCheck", "isCheckmate", "movePieceTo", "ChessView.update" };
+    private static final int BUCKETS = 64;
+
+    private static final LongAdder[] calls = new LongAdder[NAMES.length];
+    private static final LongAdder[] totalNanos = new LongAdder[NAMES.length];
+    private static final LongAdder[][] histograms = new LongAdder[NAMES.length][BUCKETS];
+    private static final LongAdder positionCopies = new LongAdder();
+
+    static {
+        for (int op = 0; op < NAMES.length; op++) {
+            calls[op] = new LongAdder();
+            totalNanos[op] = new LongAdder();
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                histograms[op][bucket] = new LongAdder();
+            }
+        }
+        if (ENABLED) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(new EngineStats(),
+                        new ObjectName("programming.set8.christchess:type=EngineStats"));
+            } catch (JMException e) {
+                System.err.println("EngineStats not published: " + e.getMessage());
+            }
+        }
+    }
+
+    private EngineStats() {
+    }
+
+    /**
+     * Records one call of an operation. Callers check {@link #ENABLED} first.
+     *
+     * @param op
+     *            the operation, e.g. {@link #IS_VALID_MOVE}
+     * @param start
+     *            the value of {@link System#nanoTime()} when the call started
+     */
+    public static void record(int op, long start) {
+        long nanos = Math.max(1L, System.nanoTime() - start);
+        calls[op].increment();
+        totalNanos[op].add(nanos);
+        histograms[op][63 - Long.numberOfLeadingZeros(nanos)].increment();
+    }
+
+    public static void countPositionCopy() {
+        positionCopies.increment();
+    }
+
+    /**
+     * Prints the numbers collected so far, if switched on.
+     *
+     * @param out
+     *            the stream to print to
+     */
+    public static void printReport(PrintStream out) {
+        if (ENABLED) {
+            out.print(report());
+        }
+    }
+
+    static String report() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%-18s %12s %14s %10s %10s %10s%n", "operation", "calls", "total ms", "mean ns",
+                "p50 ns", "p99 ns"));
+        for (int op = 0; op < NAMES.length; op++) {
+            long count = calls[op].sum();
+            long nanos = totalNanos[op].sum();
+            report.append(String.format("%-18s %12d %14.3f %10d %10d %10d%n", NAMES[op], count, nanos / 1e6,
+                    count == 0 ? 0 : nanos / count, percentile(op, 0.5), percentile(op, 0.99)));
+        }
+        report.append(String.format("%-18s %12d%n", "position copies", positionCopies.sum()));
+        return report.toString();
+    }
+
+    // the upper bound of the bucket holding the given fraction of the calls
+    private static long percentile(int op, double fraction) {
+        long count = calls[op].sum();
+        if (count == 0) {
+            return 0;
+        }
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += histograms[op][bucket].sum();
+            if (seen >= fraction * count) {
+                return bucket >= 62 ? Long.MAX_VALUE : (2L << bucket) - 1;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return ENABLED;
+    }
+
+    @Override
+    public Map<String, Long> getCalls() {
+        Map<String, Long> values = new LinkedHashMap<>();
+        for (int op = 0; op < NAMES.length; op++) {
+            values.put(NAMES[op], calls[op].sum());
+        }
+        return values;
+    }
+
+    @Override
+    public Map<String, Long> getTotalNanos() {
+        Map<String, Long> values = new LinkedHashMap<>();
+        for (int op = 0; op < NAMES.length; op++) {
+            values.put(NAMES[op], totalNanos[op].sum());
+        }
+        return values;
+    }
+
+    @Override
+    public Map<String, Long> getMedianNanos() {
+        Map<String, Long> values = new LinkedHashMap<>();
+        for (int op = 0; op < NAMES.length; op++) {
+            values.put(NAMES[op], percentile(op, 0.5));
+        }
+        return values;
+    }
+
+    @Override
+    public Map<String, Long> getP99Nanos() {
+        Map<String, Long> values = new LinkedHashMap<>();
+        for (int op = 0; op < NAMES.length; op++) {
+            values.put(NAMES[op], percentile(op, 0.99));
+        }
+        return values;
+    }
+
+    @Override
+    public long getPositionCopies() {
+        return positionCopies.sum();
+    }
+
+    @Override
+    public String getReport() {
+        return report();
+    }
+
+    @Override
+    public void reset() {
+        for (int op = 0; op < NAMES.length; op++) {
+            calls[op].reset();
+            totalNanos[op].reset();
+            for (LongAdder bucket : histograms[op]) {
+                bucket.reset();
+            }
+        }
+        positionCopies.reset();
+    }
+}
@@ -0,0 +1,25 @@
+package programming.set8.christchess;
+
+import java.util.Map;
+
+/**
+ * The management interface of {@link EngineStats}, keyed by operation name.
+ */
+public interface EngineStatsMXBean {
+
+    boolean isEnabled();
+
+    Map<String, Long> getCalls();
+
+    Map<String, Long> getTotalNanos();
+
+    Map<String, Long> getMedianNanos();
+
+    Map<String, Long> getP99Nanos();
+
+    long getPositionCopies();
+
+    String getReport();
+
+    void reset();
+}
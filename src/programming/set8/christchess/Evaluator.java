@@ -0,0 +1,100 @@
+package programming.set8.christchess;
+
+/**
+ * Static evaluation of a position by material and piece-square tables, in centipawns from
+ * the point of view of the active player.
+ */
+public final class Evaluator {
+
+    // indexed by piece type; the king is never captured
+    public static final int[] PIECE_VALUES = {100, 320, 330, 500, 900, 0};
+
+    // from the point of view of player 1, square 0 being a8; player 2 reads them mirrored.
+    // pawns are not promoted in this game, so the last ranks are worth little
+    private static final int[][] SQUARE_VALUES = {
+            { // pawn
+                    0,  0,  0,  0,  0,  0,  0,  0,
+                   20, 20, 20, 25, 25, 20, 20, 20,
+                   10, 10, 20, 30, 30, 20, 10, 10,
+                    5,  5, 10, 25, 25, 10,  5,  5,
+                    0,  0,  0, 20, 20,  0,  0,  0,
+                    5, -5,-10,  0,  0,-10, -5,  5,
+                    5, 10, 10,-20,-20, 10, 10,  5,
+                    0,  0,  0,  0,  0,  0,  0,  0
+            },
+            { // knight
+                  -50,-40,-30,-30,-30,-30,-40,-50,
+                  -40,-20,  0,  0,  0,  0,-20,-40,
+                  -30,  0, 10, 15, 15, 10,  0,-30,
+                  -30,  5, 15, 20, 20, 15,  5,-30,
+                  -30,  0, 15, 20, 20, 15,  0,-30,
+                  -30,  5, 10, 15, 15, 10,  5,-30,
+                  -40,-20,  0,  5,  5,  0,-20,-40,
+                  -50,-40,-30,-30,-30,-30,-40,-50
+            },
+            { // bishop
+                  -20,-10,-10,-10,-10,-10,-10,-20,
+                  -10,  0,  0,  0,  0,  0,  0,-10,
+                  -10,  0,  5, 10, 10,  5,  0,-10,
+                  -10,  5,  5, 10, 10,  5,  5,-10,
+                  -10,  0, 10, 10, 10, 10,  0,-10,
+                  -10, 10, 10, 10, 10, 10, 10,-10,
+                  -10,  5,  0,  0,  0,  0,  5,-10,
+                  -20,-10,-10,-10,-10,-10,-10,-20
+            },
+            { // rook
+                    0,  0,  0,  0,  0,  0,  0,  0,
+                    5, 10, 10, 10, 10, 10, 10,  5,
+                   -5,  0,  0,  0,  0,  0,  0, -5,
+                   -5,  0,  0,  0,  0,  0,  0, -5,
+                   -5,  0,  0,  0,  0,  0,  0, -5,
+                   -5,  0,  0,  0,  0,  0,  0, -5,
+                   -5,  0,  0,  0,  0,  0,  0, -5,
+                    0,  0,  0,  5,  5,  0,  0,  0
+            },
+            { // queen
+                  -20,-10,-10, -5, -5,-10,-10,-20,
+                  -10,  0,  0,  0,  0,  0,  0,-10,
+                  -10,  0,  5,  5,  5,  5,  0,-10,
+                   -5,  0,  5,  5,  5,  5,  0, -5,
+                    0,  0,  5,  5,  5,  5,  0, -5,
+                  -10,  5,  5,  5,  5,  5,  0,-10,
+                  -10,  0,  5,  0,  0,  0,  0,-10,
+                  -20,-10,-10, -5, -5,-10,-10,-20
+            },
+            { // king
+                  -30,-40,-40,-50,-50,-40,-40,-30,
+                  -30,-40,-40,-50,-50,-40,-40,-30,
+                  -30,-40,-40,-50,-50,-40,-40,-30,
+                  -30,-40,-40,-50,-50,-40,-40,-30,
+                  -20,-30,-30,-40,-40,-30,-30,-20,
+                  -10,-20,-20,-20,-20,-20,-20,-10,
+                   20, 20,  0,  0,  0,  0, 20, 20,
+                   20, 30, 10,  0,  0, 10, 30, 20
+            }
+    };
+
+    private Evaluator() {
+    }
+
+    public static int evaluate(ChessData data) {
+        int player = data.getActivePlayer();
+        return evaluate(data, player) - evaluate(data, ChessData.opponentOf(player));
+    }
+
+    private static int evaluate(ChessData data, int player) {
+        // player 2 looks at the board from the other side
+        int mirror = player == ChessPiece.PLAYER1 ? 0 : 56;
+
+        int score = 0;
+        for (int type = ChessPiece.PAWN; type <= ChessPiece.KING; type++) {
+            long pieces = data.getPieceMask(player, type);
+            score += PIECE_VALUES[type] * Long.bitCount(pieces);
+            while (pieces != 0L) {
+                score += SQUARE_VALUES[type][Long.numberOfTrailingZeros(pieces) ^ mirror];
+                pieces &= pieces - 1;
+            }
+        }
+        return score;
+    }
+}
@@ -0,0 +1,208 @@
+package programming.set8.christchess;
+
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hosts many independent games, each identified by a number. Between moves a game is kept
+ * only in the packed form of {@link ChessData#pack()}, a few dozen bytes; it is unpacked
+ * into a board reused by the calling thread while a move is checked and played.
+ *
+ * All methods may be called from any thread. Moves submitted to the same game at the same
+ * time are processed one after the other.
+ */
+public class GameSessions {
+
+    public static final int MOVE_PLAYED = 0;
+    public static final int NO_SUCH_GAME = 1;
+    public static final int NOT_YOUR_TURN = 2;
+    public static final int ILLEGAL_MOVE = 3;
+
+    private final ConcurrentHashMap<Long, byte[]> games = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong();
+
+    // one board per thread to unpack games into
+    private final ThreadLocal<ChessData> boards = ThreadLocal.withInitial(ChessData::new);
+
+    private final LongAdder movesPlayed = new LongAdder();
+    private final LongAdder movesRejected = new LongAdder();
+
+    /**
+     * Starts a game from the initial position.
+     *
+     * @return the id of the new game.
+     */
+    public long createGame() {
+        ChessData board = boards.get();
+        board.initNewGame();
+        long id = nextId.incrementAndGet();
+        games.put(id, board.pack());
+        return id;
+    }
+
+    /**
+     * Ends a game and forgets it.
+     *
+     * @param gameId
+     *            the id of the game
+     * @return whether the game existed.
+     */
+    public boolean removeGame(long gameId) {
+        return games.remove(gameId) != null;
+    }
+
+    public int size() {
+        return games.size();
+    }
+
+    /**
+     * Checks a move against the rules and plays it if it is legal. The turn then passes to
+     * the other player.
+     *
+     * @param gameId
+     *            the id of the game
+     * @param player
+     *            the player submitting the move
+     * @param move
+     *            the move, encoded by {@link Move}
+     * @return {@link #MOVE_PLAYED}, {@link #NO_SUCH_GAME}, {@link #NOT_YOUR_TURN} or
+     *         {@link #ILLEGAL_MOVE}.
+     */
+    public int submitMove(long gameId, int player, int move) {
+        int[] result = { NO_SUCH_GAME };
+        games.computeIfPresent(gameId, (id, packed) -> {
+            ChessData board = boards.get();
+            board.unpack(packed);
+            ChessPiece piece = board.getPieceAt(Move.from(move));
+            if (board.getActivePlayer() != player) {
+                result[0] = NOT_YOUR_TURN;
+                return packed;
+            }
+            if (!board.isValidSelection(piece) || !board.isValidMove(piece, Move.toX(move), Move.toY(move))) {
+                result[0] = ILLEGAL_MOVE;
+                return packed;
+            }
+
+            board.movePieceTo(piece, Move.toX(move), Move.toY(move));
+            board.togglePlayer();
+            result[0] = MOVE_PLAYED;
+            return board.pack();
+        });
+
+        if (result[0] == MOVE_PLAYED) {
+            movesPlayed.increment();
+        } else {
+            movesRejected.increment();
+        }
+        return result[0];
+    }
+
+    /**
+     * Returns a copy of the current position of a game.
+     *
+     * @param gameId
+     *            the id of the game
+     * @return the position, or {@code null} if there is no such game.
+     */
+    public ChessData getPosition(long gameId) {
+        byte[] packed = games.get(gameId);
+        if (packed == null) {
+            return null;
+        }
+        ChessData data = new ChessData();
+        data.unpack(packed);
+        return data;
+    }
+
+    public long getMovesPlayed() {
+        return movesPlayed.sum();
+    }
+
+    public long getMovesRejected() {
+        return movesRejected.sum();
+    }
+
+    /**
+     * Returns the number of bytes used by the packed positions of all games.
+     *
+     * @return the size of the positions in bytes.
+     */
+    public long getPackedBytes() {
+        long bytes = 0;
+        for (byte[] packed : games.values()) {
+            bytes += packed.length;
+        }
+        return bytes;
+    }
+
+    /**
+     * Hosts many games and plays random legal moves in all of them, to measure how many
+     * moves per second are checked and how much memory a game takes.
+     *
+     * Usage: {@code GameSessions <games> <moves per game> [threads]}
+     *
+     * @param args
+     *            the command line arguments
+     * @throws InterruptedException
+     *             if interrupted while waiting for the threads.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length < 2) {
+            System.err.println("Usage: GameSessions <games> <moves per game> [threads]");
+            System.exit(1);
+        }
+
+        int gameCount = Integer.parseInt(args[0]);
+        int movesPerGame = Integer.parseInt(args[1]);
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long memoryBefore = runtime.totalMemory() - runtime.freeMemory();
+        GameSessions sessions = new GameSessions();
+        long[] ids = new long[gameCount];
+        for (int i = 0; i < gameCount; i++) {
+            ids[i] = sessions.createGame();
+        }
+        System.gc();
+        long memoryAfter = runtime.totalMemory() - runtime.freeMemory();
+        System.out.printf("%d games: %.1f bytes per packed position, about %.0f bytes per game on the heap%n",
+                gameCount, (double) sessions.getPackedBytes() / gameCount,
+                (double) (memoryAfter - memoryBefore) / gameCount);
+
+        // clients pick their moves on their own board, then submit them
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            int first = t;
+            pool.execute(() -> {
+                Random random = new Random(first);
+                ChessData client = new ChessData();
+                MoveList moves = new MoveList();
+                for (int round = 0; round < movesPerGame; round++) {
+                    for (int i = first; i < gameCount; i += threads) {
+                        byte[] packed = sessions.games.get(ids[i]);
+                        client.unpack(packed);
+                        client.generateLegalMoves(client.getActivePlayer(), moves);
+                        if (!moves.isEmpty()) {
+                            sessions.submitMove(ids[i], client.getActivePlayer(), moves.get(random.nextInt(moves.size())));
+                        }
+                    }
+                }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%d moves played, %d rejected in %.3f s: %.0f moves/s on %d threads%n",
+                sessions.getMovesPlayed(), sessions.getMovesRejected(), seconds,
+                sessions.getMovesPlayed() / seconds, threads);
+        EngineStats.printReport(System.out);
+    }
+}
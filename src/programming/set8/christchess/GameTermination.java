@@ -0,0 +1,96 @@
+package programming.set8.christchess;
+
+/**
+ * Decides whether a game is over after a move: by checkmate, by stalemate, because neither
+ * player has the pieces left to mate, or because the position occurred for the third time.
+ *
+ * A check takes bounded time: it stops at the first legal move found, and repetitions are
+ * only looked for since the last capture or pawn move, see {@link ChessData#getRepetitions()}.
+ */
+public final class GameTermination {
+
+    public static final int ONGOING = 0;
+    public static final int CHECKMATE = 1;
+    public static final int STALEMATE = 2;
+    public static final int INSUFFICIENT_MATERIAL = 3;
+    public static final int REPETITION = 4;
+
+    // squares of one colour, where x + y is even
+    private static final long LIGHT_SQUARES = 0xAA55AA55AA55AA55L;
+
+    private GameTermination() {
+    }
+
+    /**
+     * Checks whether the game is over for the active player.
+     *
+     * @param data
+     *            the current position
+     * @return {@link #ONGOING}, {@link #CHECKMATE} (the active player has lost),
+     *         {@link #STALEMATE}, {@link #INSUFFICIENT_MATERIAL} or {@link #REPETITION}.
+     */
+    public static int check(ChessData data) {
+        int player = data.getActivePlayer();
+        if (!data.hasLegalMove(player)) {
+            return data.isInCheck(player) ? CHECKMATE : STALEMATE;
+        }
+        if (isInsufficientMaterial(data)) {
+            return INSUFFICIENT_MATERIAL;
+        }
+        if (data.getRepetitions() >= 3) {
+            return REPETITION;
+        }
+        return ONGOING;
+    }
+
+    /**
+     * Returns whether no sequence of moves can lead to a checkmate: only kings are left,
+     * with at most one knight or bishop, or with bishops all on squares of one colour.
+     *
+     * @param data
+     *            the position
+     * @return whether there is too little material to mate.
+     */
+    public static boolean isInsufficientMaterial(ChessData data) {
+        long knights = 0L;
+        long bishops = 0L;
+        for (int player = ChessPiece.PLAYER1; player <= ChessPiece.PLAYER2; player++) {
+            if ((data.getPieceMask(player, ChessPiece.PAWN) | data.getPieceMask(player, ChessPiece.ROOK)
+                    | data.getPieceMask(player, ChessPiece.QUEEN)) != 0L) {
+                return false;
+            }
+            knights |= data.getPieceMask(player, ChessPiece.KNIGHT);
+            bishops |= data.getPieceMask(player, ChessPiece.BISHOP);
+        }
+
+        if (Long.bitCount(knights | bishops) <= 1) {
+            return true;
+        }
+        return knights == 0L && ((bishops & LIGHT_SQUARES) == 0L || (bishops & ~LIGHT_SQUARES) == 0L);
+    }
+
+    /**
+     * Describes the result of {@link #check(ChessData)} for the given position.
+     *
+     * @param result
+     *            the result
+     * @param loser
+     *            the player who was to move
+     * @return the description.
+     */
+    public static String describe(int result, int loser) {
+        String name = loser == ChessPiece.PLAYER1 ? "White" : "Black";
+        switch (result) {
+            case CHECKMATE:
+                return name + " is checkmate.";
+            case STALEMATE:
+                return name + " has no legal move: stalemate, the game is drawn.";
+            case INSUFFICIENT_MATERIAL:
+                return "Neither player can mate any more, the game is drawn.";
+            case REPETITION:
+                return "The position occurred for the third time, the game is drawn.";
+            default:
+                return "The game goes on.";
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package programming.set8.christchess;
+
+import java.util.Random;
+
+/**
+ * A player that picks the move leading to the best evaluated position, without looking
+ * at the answers. Equally good moves are chosen at random.
+ */
+public class GreedyPlayer implements ChessPlayer {
+
+    private final Random random;
+    private final MoveList moves = new MoveList();
+
+    public GreedyPlayer(long seed) {
+        this.random = new Random(seed);
+    }
+
+    @Override
+    public int selectMove(ChessData data) {
+        data.generateLegalMoves(data.getActivePlayer(), moves);
+
+        int bestMove = Move.NONE;
+        int bestScore = Integer.MIN_VALUE;
+        int ties = 0;
+        for (int i = 0; i < moves.size(); i++) {
+            data.makeMove(moves.get(i));
+            // evaluated from the opponent's point of view after the move
+            int score = -Evaluator.evaluate(data);
+            data.unmakeMove();
+
+            if (score > bestScore) {
+                bestScore = score;
+                bestMove = moves.get(i);
+                ties = 1;
+            } else if (score == bestScore && random.nextInt(++ties) == 0) {
+                bestMove = moves.get(i);
+            }
+        }
+        return bestMove;
+    }
+}
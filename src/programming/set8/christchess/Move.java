@@ -0,0 +1,62 @@
+package programming.set8.christchess;
+
+/**
+ * Helpers for moves encoded as primitive {@code int}s, as stored in a {@link MoveList}.
+ *
+ * The lowest six bits hold the start square and the next six bits the target square,
+ * both numbered {@code y * 8 + x}.
+ */
+public final class Move {
+
+    public static final int NONE = 0;
+
+    private Move() {
+    }
+
+    public static int of(int from, int to) {
+        return from | (to << 6);
+    }
+
+    public static int of(int fromX, int fromY, int toX, int toY) {
+        return of(Bitboards.square(fromX, fromY), Bitboards.square(toX, toY));
+    }
+
+    public static int from(int move) {
+        return move & 63;
+    }
+
+    public static int to(int move) {
+        return (move >>> 6) & 63;
+    }
+
+    public static int fromX(int move) {
+        return from(move) & 7;
+    }
+
+    public static int fromY(int move) {
+        return from(move) >>> 3;
+    }
+
+    public static int toX(int move) {
+        return to(move) & 7;
+    }
+
+    public static int toY(int move) {
+        return to(move) >>> 3;
+    }
+
+    /**
+     * Returns the move in coordinate notation, e.g. {@code e2e4}.
+     *
+     * @param move
+     *            the encoded move.
+     * @return the start and target square names.
+     */
+    public static String toString(int move) {
+        return squareName(from(move)) + squareName(to(move));
+    }
+
+    public static String squareName(int sq) {
+        return "" + (char) ('a' + (sq & 7)) + (char) ('8' - (sq >>> 3));
+    }
+}
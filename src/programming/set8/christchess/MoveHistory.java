@@ -0,0 +1,145 @@
+package programming.set8.christchess;
+
+import java.util.Arrays;
+
+/**
+ * The moves of a game, each stored in 16 bits: the move as encoded by {@link Move} in bits
+ * 0 to 11, the type of the captured piece plus one in bits 12 to 14 ({@code 0} if nothing was
+ * captured), and bit 15 as {@link #FLAG}, which marks pawn moves. Next to each move the hash
+ * of the position before it is kept, to find repeated positions.
+ *
+ * Moves that have been undone stay in the buffer until a new move is added, so undo and redo
+ * only move the current position within the buffer.
+ */
+public class MoveHistory {
+
+    public static final int FLAG = 1 << 15;
+
+    private static final int MOVE_MASK = (1 << 12) - 1;
+    private static final int CAPTURE_SHIFT = 12;
+
+    private short[] entries = new short[16];
+    private long[] hashes = new long[16];
+
+    // moves before size have been played, moves from size to end can be redone
+    private int size;
+    private int end;
+
+    /**
+     * Encodes a move and the piece it captured.
+     *
+     * @param move
+     *            the move, encoded by {@link Move}
+     * @param capturedType
+     *            the type of the captured piece, or {@code -1} if nothing was captured
+     * @return the history entry.
+     */
+    public static int encode(int move, int capturedType) {
+        return move | (capturedType + 1) << CAPTURE_SHIFT;
+    }
+
+    public static int move(int entry) {
+        return entry & MOVE_MASK;
+    }
+
+    /**
+     * Returns the type of the piece captured by the move of an entry.
+     *
+     * @param entry
+     *            the history entry
+     * @return the piece type, or {@code -1} if the move did not capture.
+     */
+    public static int capturedType(int entry) {
+        return (entry >>> CAPTURE_SHIFT & 7) - 1;
+    }
+
+    /**
+     * Returns whether a move can never be reversed, because it captured or moved a pawn.
+     *
+     * @param entry
+     *            the history entry
+     * @return whether the move is irreversible.
+     */
+    public static boolean isIrreversible(int entry) {
+        return (entry & FLAG) != 0 || capturedType(entry) >= 0;
+    }
+
+    /**
+     * Adds a move after the current position. Moves that were undone can no longer be
+     * redone afterwards.
+     *
+     * @param entry
+     *            the history entry
+     * @param hash
+     *            the hash of the position before the move
+     */
+    public void add(int entry, long hash) {
+        if (size == entries.length) {
+            entries = Arrays.copyOf(entries, size * 2);
+            hashes = Arrays.copyOf(hashes, size * 2);
+        }
+        hashes[size] = hash;
+        entries[size++] = (short) entry;
+        end = size;
+    }
+
+    public boolean canUndo() {
+        return size > 0;
+    }
+
+    public boolean canRedo() {
+        return size < end;
+    }
+
+    /**
+     * Steps back over the last move played.
+     *
+     * @return the entry of the move to take back.
+     */
+    public int undo() {
+        if (size == 0) {
+            throw new IllegalStateException("no move to undo");
+        }
+        return entries[--size] & 0xFFFF;
+    }
+
+    /**
+     * Steps forward over the last move undone.
+     *
+     * @return the entry of the move to play again.
+     */
+    public int redo() {
+        if (size == end) {
+            throw new IllegalStateException("no move to redo");
+        }
+        return entries[size++] & 0xFFFF;
+    }
+
+    /**
+     * Returns the number of moves played, not counting moves that were undone.
+     *
+     * @return the number of moves.
+     */
+    public int size() {
+        return size;
+    }
+
+    public int get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+        }
+        return entries[index] & 0xFFFF;
+    }
+
+    public long getHash(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+        }
+        return hashes[index];
+    }
+
+    public void clear() {
+        size = 0;
+        end = 0;
+    }
+}
@@ -0,0 +1,127 @@
+package programming.set8.christchess;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An append-only file of the moves of one game, two bytes per record, from which the game
+ * can be restored after the program was stopped or crashed. Moves are written as
+ * {@link MoveHistory} entries; undo and redo are written as the marker records {@link #UNDO}
+ * and {@link #REDO}, so nothing in the file is ever rewritten.
+ *
+ * Each record is handed to the operating system as soon as it is written, so it survives
+ * the end of the process.
+ */
+public class MoveJournal implements Closeable {
+
+    // a piece never moves to its own square, so these cannot be moves
+    public static final int UNDO = Move.of(0, 0);
+    public static final int REDO = Move.of(1, 1);
+
+    private final FileChannel channel;
+    private final ByteBuffer record = ByteBuffer.allocate(2);
+
+    /**
+     * Opens a journal for appending, creating the file if it does not exist. A half-written
+     * last record is cut off, so the records written from now on stay aligned.
+     *
+     * @param file
+     *            the journal file
+     * @throws IOException
+     *             if the file cannot be opened.
+     */
+    public MoveJournal(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        try {
+            channel.truncate(channel.size() & ~1L);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Appends the last move of a game.
+     *
+     * @param data
+     *            the game whose last move to write
+     * @throws IOException
+     *             if the record cannot be written.
+     */
+    public void appendLastMove(ChessData data) throws IOException {
+        MoveHistory history = data.getHistory();
+        append(history.get(history.size() - 1));
+    }
+
+    /**
+     * Appends a record: a history entry, {@link #UNDO} or {@link #REDO}.
+     *
+     * @param entry
+     *            the record
+     * @throws IOException
+     *             if the record cannot be written.
+     */
+    public void append(int entry) throws IOException {
+        record.clear();
+        record.putShort((short) entry);
+        record.flip();
+        while (record.hasRemaining()) {
+            channel.write(record);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Replays a journal from the initial position. Every move is followed by the other
+     * player's turn. A half-written last record is ignored.
+     *
+     * @param file
+     *            the journal file
+     * @param data
+     *            the game to restore, which is reset first
+     * @return the number of records replayed.
+     * @throws IOException
+     *             if the file cannot be read or does not describe a game.
+     */
+    public static int replay(Path file, ChessData data) throws IOException {
+        data.initNewGame();
+        if (!Files.exists(file)) {
+            return 0;
+        }
+
+        ByteBuffer records = ByteBuffer.wrap(Files.readAllBytes(file));
+        int count = 0;
+        while (records.remaining() >= 2) {
+            int entry = records.getShort() & 0xFFFF;
+            if (entry == UNDO) {
+                if (!data.undoMove()) {
+                    throw new IOException("undo without a move in " + file);
+                }
+            } else if (entry == REDO) {
+                if (!data.redoMove()) {
+                    throw new IOException("redo without an undone move in " + file);
+                }
+            } else {
+                int move = MoveHistory.move(entry);
+                ChessPiece piece = data.getPieceAt(Move.from(move));
+                if (!data.isValidSelection(piece) || !data.isValidMove(piece, Move.toX(move), Move.toY(move))) {
+                    throw new IOException("illegal move " + Move.toString(move) + " in " + file);
+                }
+                data.movePieceTo(piece, Move.toX(move), Move.toY(move));
+                data.togglePlayer();
+            }
+            count++;
+        }
+        return count;
+    }
+}
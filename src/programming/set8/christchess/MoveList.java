@@ -0,0 +1,49 @@
+package programming.set8.christchess;
+
+import java.util.Arrays;
+
+/**
+ * A reusable buffer of moves encoded by {@link Move}. Clearing the list keeps the
+ * buffer, so a list filled once per position does not allocate after warm-up.
+ */
+public class MoveList {
+
+    private int[] moves = new int[256];
+    private int size;
+
+    public void clear() {
+        this.size = 0;
+    }
+
+    public void add(int move) {
+        if (size == moves.length) {
+            moves = Arrays.copyOf(moves, size * 2);
+        }
+        moves[size++] = move;
+    }
+
+    public int get(int i) {
+        return moves[i];
+    }
+
+    public void set(int i, int move) {
+        moves[i] = move;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    public boolean contains(int move) {
+        for (int i = 0; i < size; i++) {
+            if (moves[i] == move) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,144 @@
+package programming.set8.christchess;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+/**
+ * An opening book read from a binary file of 16 byte entries: the position hash as a long,
+ * the move as an int and its weight as an int, sorted by hash. The file is mapped into
+ * memory and searched by binary search, so opening a book takes the same time whatever its
+ * size, and only the pages touched by a lookup are ever read.
+ *
+ * Lookups do not change the book, so one book can be shared by any number of threads.
+ * Books are written by {@link OpeningBookBuilder}.
+ */
+public class OpeningBook {
+
+    static final int ENTRY_SIZE = 16;
+
+    // a single mapping is limited to 2 GB, so large books are mapped in segments
+    private static final int SEGMENT_SHIFT = 26;
+    private static final long SEGMENT_ENTRIES = 1L << SEGMENT_SHIFT;
+
+    private final MappedByteBuffer[] segments;
+    private final long size;
+
+    private OpeningBook(MappedByteBuffer[] segments, long size) {
+        this.segments = segments;
+        this.size = size;
+    }
+
+    /**
+     * Opens a book file.
+     *
+     * @param file
+     *            the book file
+     * @return the book.
+     * @throws IOException
+     *             if the file cannot be read.
+     */
+    public static OpeningBook open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size() / ENTRY_SIZE;
+            MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((size + SEGMENT_ENTRIES - 1) >>> SEGMENT_SHIFT)];
+            for (int i = 0; i < segments.length; i++) {
+                long start = i * SEGMENT_ENTRIES;
+                long entries = Math.min(SEGMENT_ENTRIES, size - start);
+                // the mapping stays valid after the channel is closed
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start * ENTRY_SIZE, entries * ENTRY_SIZE);
+            }
+            return new OpeningBook(segments, size);
+        }
+    }
+
+    /**
+     * Returns the number of entries.
+     *
+     * @return the number of entries.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Chooses one of the book moves of the current position, each with a probability
+     * proportional to its weight.
+     *
+     * @param data
+     *            the current position
+     * @param random
+     *            chooses among the moves
+     * @return a legal book move for the active player, or {@link Move#NONE} if the
+     *         position is not in the book.
+     */
+    public int selectMove(ChessData data, Random random) {
+        long hash = data.getHash();
+        long first = firstIndexOf(hash);
+        if (first < 0) {
+            return Move.NONE;
+        }
+
+        long total = 0;
+        long end = first;
+        for (; end < size && hash(end) == hash; end++) {
+            total += weight(end);
+        }
+        if (total <= 0) {
+            return Move.NONE;
+        }
+
+        long choice = (long) (random.nextDouble() * total);
+        for (long i = first; i < end; i++) {
+            choice -= weight(i);
+            if (choice < 0) {
+                int move = move(i);
+                // guards against hash collisions with positions from another game
+                ChessPiece piece = data.getPieceAt(Move.from(move));
+                if (data.isValidSelection(piece) && data.isValidMove(piece, Move.toX(move), Move.toY(move))) {
+                    return move;
+                }
+                return Move.NONE;
+            }
+        }
+        return Move.NONE;
+    }
+
+    // binary search for the first entry of a position, or -1
+    private long firstIndexOf(long hash) {
+        long low = 0;
+        long high = size;
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            if (Long.compareUnsigned(hash(middle), hash) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low < size && hash(low) == hash ? low : -1;
+    }
+
+    private long hash(long index) {
+        return segment(index).getLong(offset(index));
+    }
+
+    private int move(long index) {
+        return segment(index).getInt(offset(index) + 8);
+    }
+
+    private int weight(long index) {
+        return segment(index).getInt(offset(index) + 12);
+    }
+
+    private MappedByteBuffer segment(long index) {
+        return segments[(int) (index >>> SEGMENT_SHIFT)];
+    }
+
+    private static int offset(long index) {
+        return (int) (index & (SEGMENT_ENTRIES - 1)) * ENTRY_SIZE;
+    }
+}
@@ -0,0 +1,121 @@
+package programming.set8.christchess;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Builds an {@link OpeningBook} file from the games of PGN files. Every move played in the
+ * first plies of a game gets a weight of two if the player making it won the game, one for a
+ * draw or an unknown result, and none if the player lost; moves that were never played by a
+ * player who did not lose are left out.
+ *
+ * Usage: {@code OpeningBookBuilder <book> [maxPlies] <pgn>...}
+ */
+public class OpeningBookBuilder implements PgnVisitor {
+
+    private final int maxPlies;
+
+    // position hash -> move -> weight, of all games read
+    private final Map<Long, Map<Integer, Integer>> weights = new HashMap<>();
+
+    // the positions and moves of the current game, weighted at its end
+    private long[] gameHashes;
+    private int[] gameMoves;
+    private int[] gamePlayers;
+    private int plies;
+
+    public OpeningBookBuilder(int maxPlies) {
+        this.maxPlies = maxPlies;
+        this.gameHashes = new long[maxPlies];
+        this.gameMoves = new int[maxPlies];
+        this.gamePlayers = new int[maxPlies];
+    }
+
+    @Override
+    public void startGame(ChessData data) {
+        plies = 0;
+    }
+
+    @Override
+    public void move(ChessData data, int move) {
+        if (plies < maxPlies) {
+            gameHashes[plies] = data.getHash();
+            gameMoves[plies] = move;
+            gamePlayers[plies] = data.getActivePlayer();
+            plies++;
+        }
+    }
+
+    @Override
+    public void endGame(ChessData data, int result, boolean complete) {
+        for (int i = 0; i < plies; i++) {
+            int weight;
+            if (result == ChessPiece.NO_PLAYER || result == PgnReader.UNKNOWN_RESULT) {
+                weight = 1;
+            } else {
+                weight = result == gamePlayers[i] ? 2 : 0;
+            }
+            weights.computeIfAbsent(gameHashes[i], hash -> new HashMap<>()).merge(gameMoves[i], weight, Integer::sum);
+        }
+    }
+
+    /**
+     * Writes the book, sorted by position hash as the book's binary search expects.
+     *
+     * @param file
+     *            the book file
+     * @return the number of entries written.
+     * @throws IOException
+     *             if the file cannot be written.
+     */
+    public long write(Path file) throws IOException {
+        Map<Long, Map<Integer, Integer>> sorted = new TreeMap<>(Long::compareUnsigned);
+        sorted.putAll(weights);
+
+        long entries = 0;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+            for (Map.Entry<Long, Map<Integer, Integer>> position : sorted.entrySet()) {
+                for (Map.Entry<Integer, Integer> move : position.getValue().entrySet()) {
+                    if (move.getValue() > 0) {
+                        out.writeLong(position.getKey());
+                        out.writeInt(move.getKey());
+                        out.writeInt(move.getValue());
+                        entries++;
+                    }
+                }
+            }
+        }
+        return entries;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: OpeningBookBuilder <book> [maxPlies] <pgn>...");
+            System.exit(1);
+        }
+
+        int first = 1;
+        int maxPlies = 20;
+        if (args[1].matches("\\d+")) {
+            maxPlies = Integer.parseInt(args[1]);
+            first = 2;
+        }
+
+        long start = System.nanoTime();
+        OpeningBookBuilder builder = new OpeningBookBuilder(maxPlies);
+        for (int i = first; i < args.length; i++) {
+            new PgnReader(Paths.get(args[i])).read(builder);
+        }
+        long entries = builder.write(Paths.get(args[0]));
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%d positions, %d entries written in %.3f s%n", builder.weights.size(), entries, seconds);
+    }
+}
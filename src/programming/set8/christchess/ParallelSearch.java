@@ -0,0 +1,192 @@
+package programming.set8.christchess;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A Lazy SMP search: several threads search the same position independently and share
+ * one {@link TranspositionTable}, so each profits from the results of the others. The
+ * move of the main thread, which runs on the caller's thread, is the result.
+ *
+ * Positions are confined to threads: every helper searches its own copy of the position,
+ * made on the caller's thread before the helper starts, and the caller's position is only
+ * touched by the main search. The shared table is the only state the threads have in common.
+ */
+public class ParallelSearch {
+
+    private final int threads;
+    private final TranspositionTable table;
+    private final ExecutorService helpers;
+
+    // the searches of the running findBestMove call, for stop()
+    private volatile Search[] running = new Search[0];
+    private volatile boolean stopRequested;
+
+    private long nodes;
+    private int completedDepth;
+    private int score;
+
+    public ParallelSearch(int threads, TranspositionTable table) {
+        this.threads = Math.max(1, threads);
+        this.table = table;
+        this.helpers = this.threads > 1 ? Executors.newFixedThreadPool(this.threads - 1, runnable -> {
+            Thread thread = new Thread(runnable, "search-helper");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+    }
+
+    /**
+     * Searches the position with all threads, see {@link Search#findBestMove(long, int)}.
+     *
+     * @param data
+     *            the position, which is restored when the method returns
+     * @param millis
+     *            the time budget in milliseconds
+     * @param maxDepth
+     *            the maximum depth in plies
+     * @return the best move found, or {@link Move#NONE} if there is no legal move.
+     */
+    public int findBestMove(ChessData data, long millis, int maxDepth) {
+        table.newSearch();
+
+        Search main = new Search(data, table);
+        Search[] helperSearches = new Search[threads - 1];
+        for (int i = 0; i < helperSearches.length; i++) {
+            helperSearches[i] = new Search(new ChessData(data), table);
+        }
+
+        Search[] searches = Arrays.copyOf(helperSearches, threads);
+        searches[threads - 1] = main;
+        running = searches;
+        if (stopRequested) {
+            stopAll(searches);
+        }
+
+        List<Future<Integer>> results = new ArrayList<>(threads - 1);
+        for (int i = 0; i < helperSearches.length; i++) {
+            Search helper = helperSearches[i];
+            // every other helper starts one ply deeper, so the threads
+            // do not all search the same depth at the same time
+            int startDepth = 1 + (i + 1) % 2;
+            results.add(helpers.submit(() -> helper.findBestMove(millis, maxDepth, startDepth)));
+        }
+
+        int bestMove = main.findBestMove(millis, maxDepth, 1);
+
+        nodes = main.getNodes();
+        for (int i = 0; i < helperSearches.length; i++) {
+            helperSearches[i].stop();
+            try {
+                results.get(i).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+            nodes += helperSearches[i].getNodes();
+        }
+        running = new Search[0];
+        completedDepth = main.getCompletedDepth();
+        score = main.getScore();
+        return bestMove;
+    }
+
+    /**
+     * Makes a running search return its best move as soon as possible. A stop requested
+     * before the search has started cancels it as well, until {@link #clearStop()} is called.
+     * May be called from any thread.
+     */
+    public void stop() {
+        stopRequested = true;
+        stopAll(running);
+    }
+
+    /**
+     * Forgets an earlier {@link #stop()}, so the next search runs normally.
+     */
+    public void clearStop() {
+        stopRequested = false;
+    }
+
+    private static void stopAll(Search[] searches) {
+        for (Search search : searches) {
+            search.stop();
+        }
+    }
+
+    /**
+     * Returns the nodes searched by all threads during the last search.
+     *
+     * @return the node count.
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    public int getCompletedDepth() {
+        return completedDepth;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void clearTable() {
+        table.clear();
+    }
+
+    public void shutdown() {
+        if (helpers != null) {
+            helpers.shutdownNow();
+        }
+    }
+
+    /**
+     * Reports the speedup of a fixed-depth search with several threads over one thread.
+     *
+     * Usage: {@code ParallelSearch [threads] [depth] [tableMegabytes]}
+     *
+     * @param args
+     *            the command line arguments
+     */
+    public static void main(String[] args) {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : 7;
+        int megabytes = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+
+        ChessData data = new ChessData();
+        data.initNewGame();
+
+        // warm up the JIT, so the first measured run is not the slower one
+        new ParallelSearch(1, new TranspositionTable(megabytes)).findBestMove(data, Search.NO_TIME_LIMIT, depth);
+
+        long[] times = new long[2];
+        int[] counts = {1, threads};
+        for (int run = 0; run < counts.length; run++) {
+            TranspositionTable table = new TranspositionTable(megabytes);
+            ParallelSearch search = new ParallelSearch(counts[run], table);
+
+            long start = System.nanoTime();
+            int move = search.findBestMove(data, Search.NO_TIME_LIMIT, depth);
+            times[run] = System.nanoTime() - start;
+            search.shutdown();
+
+            System.out.printf("%d thread%s: %s (score %d) at depth %d in %.3f s, %d nodes, %.0f nodes/s%n",
+                    counts[run], counts[run] == 1 ? "" : "s", Move.toString(move), search.getScore(),
+                    search.getCompletedDepth(), times[run] / 1e9, search.getNodes(),
+                    search.getNodes() / (times[run] / 1e9));
+        }
+        System.out.printf("speedup with %d threads: %.2f%n", threads, (double) times[0] / times[1]);
+        EngineStats.printReport(System.out);
+    }
+}
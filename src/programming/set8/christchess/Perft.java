@@ -0,0 +1,188 @@
+package programming.set8.christchess;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Counts the leaf nodes of the legal move tree of a position up to a fixed depth. The
+ * counts are a regression check for the move rules in {@link ChessData}, the timing a
+ * throughput number for the move generator.
+ *
+ * Usage: {@code Perft <depth> [threads] [moves...]}, where the optional moves, given as
+ * e.g. {@code e2e4}, are played from the initial position before counting. Counted from the
+ * initial position, the result is compared with {@link #EXPECTED_NODES} and the program
+ * exits with status 1 if it differs. {@code Perft --check [depth] [threads]} compares all
+ * depths from 1 up to the given one, 5 by default.
+ */
+public class Perft {
+
+    /**
+     * The node counts from the initial position for depths 1 to 6 under the rules of this
+     * game. They differ from standard chess from depth 3 on, as a pawn's double step may jump
+     * over a piece and there is no castling, en passant or promotion.
+     */
+    static final long[] EXPECTED_NODES = { 1, 20, 400, 8982, 200915, 5018983, 124482176 };
+
+    private final ChessData data;
+    private final MoveList[] moveLists;
+
+    public Perft(ChessData data, int maxDepth) {
+        this.data = data;
+        this.moveLists = new MoveList[Math.max(maxDepth, 1)];
+        for (int i = 0; i < moveLists.length; i++) {
+            moveLists[i] = new MoveList();
+        }
+    }
+
+    /**
+     * Returns the number of move sequences of length {@code depth} from the current
+     * position, with the active player moving first.
+     *
+     * @param depth
+     *            number of plies to look ahead, at most the depth given to the constructor.
+     * @return the number of leaf nodes.
+     */
+    public long perft(int depth) {
+        if (depth == 0) {
+            return 1;
+        }
+
+        MoveList moves = moveLists[depth - 1];
+        data.generateLegalMoves(data.getActivePlayer(), moves);
+        if (depth == 1) {
+            return moves.size();
+        }
+
+        long nodes = 0;
+        for (int i = 0; i < moves.size(); i++) {
+            data.makeMove(moves.get(i));
+            nodes += perft(depth - 1);
+            data.unmakeMove();
+        }
+        return nodes;
+    }
+
+    /**
+     * Like {@link #perft(int)}, but counts the subtree of every root move in its own
+     * fork-join task on a copy of the position.
+     *
+     * @param data
+     *            the position to count from, which is not changed
+     * @param depth
+     *            number of plies to look ahead
+     * @param pool
+     *            the pool running the root moves
+     * @return the number of leaf nodes.
+     */
+    public static long parallelPerft(ChessData data, int depth, ForkJoinPool pool) {
+        if (depth <= 1) {
+            return new Perft(data, depth).perft(depth);
+        }
+
+        MoveList rootMoves = new MoveList();
+        data.generateLegalMoves(data.getActivePlayer(), rootMoves);
+
+        RootMoveTask[] tasks = new RootMoveTask[rootMoves.size()];
+        for (int i = 0; i < tasks.length; i++) {
+            tasks[i] = new RootMoveTask(data, rootMoves.get(i), depth - 1);
+            pool.execute(tasks[i]);
+        }
+
+        long nodes = 0;
+        for (RootMoveTask task : tasks) {
+            nodes += task.join();
+        }
+        return nodes;
+    }
+
+    @SuppressWarnings("serial")
+    private static class RootMoveTask extends RecursiveTask<Long> {
+        private final ChessData data;
+        private final int depth;
+
+        RootMoveTask(ChessData data, int move, int depth) {
+            // copied on the calling thread, each task owns its position
+            this.data = new ChessData(data);
+            this.data.makeMove(move);
+            this.depth = depth;
+        }
+
+        @Override
+        protected Long compute() {
+            return new Perft(data, depth).perft(depth);
+        }
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: Perft <depth> [threads] [moves...] | Perft --check [depth] [threads]");
+            System.exit(1);
+        }
+        if (args[0].equals("--check")) {
+            int maxDepth = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+            int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+            System.exit(check(Math.min(maxDepth, EXPECTED_NODES.length - 1), threads) ? 0 : 1);
+        }
+
+        int depth = Integer.parseInt(args[0]);
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+
+        ChessData data = new ChessData();
+        data.initNewGame();
+        for (int i = 2; i < args.length; i++) {
+            if (!ChessUci.playMove(data, args[i])) {
+                System.err.println("Illegal move: " + args[i]);
+                System.exit(1);
+            }
+        }
+
+        long start = System.nanoTime();
+        long nodes = 0;
+        if (threads > 1) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            nodes = parallelPerft(data, depth, pool);
+            pool.shutdown();
+        } else if (depth > 1) {
+            // divide: print the node count below every root move
+            MoveList rootMoves = new MoveList();
+            data.generateLegalMoves(data.getActivePlayer(), rootMoves);
+            Perft perft = new Perft(data, depth);
+            for (int i = 0; i < rootMoves.size(); i++) {
+                data.makeMove(rootMoves.get(i));
+                long rootNodes = perft.perft(depth - 1);
+                data.unmakeMove();
+                System.out.println(Move.toString(rootMoves.get(i)) + ": " + rootNodes);
+                nodes += rootNodes;
+            }
+        } else {
+            nodes = new Perft(data, depth).perft(depth);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        System.out.printf("depth %d: %d nodes in %.3f s, %.0f nodes/s (%d thread%s)%n",
+                depth, nodes, elapsed / 1e9, nodes / (elapsed / 1e9), threads, threads == 1 ? "" : "s");
+        EngineStats.printReport(System.out);
+
+        if (args.length <= 2 && depth < EXPECTED_NODES.length && nodes != EXPECTED_NODES[depth]) {
+            System.err.println("Expected " + EXPECTED_NODES[depth] + " nodes");
+            System.exit(1);
+        }
+    }
+
+    // counts every depth from the initial position and reports the ones that differ
+    private static boolean check(int maxDepth, int threads) {
+        ChessData data = new ChessData();
+        data.initNewGame();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        boolean passed = true;
+        for (int depth = 1; depth <= maxDepth; depth++) {
+            long nodes = parallelPerft(data, depth, pool);
+            boolean match = nodes == EXPECTED_NODES[depth];
+            System.out.printf("depth %d: %d nodes, expected %d%s%n", depth, nodes, EXPECTED_NODES[depth],
+                    match ? "" : " MISMATCH");
+            passed &= match;
+        }
+        pool.shutdown();
+        return passed;
+    }
+}
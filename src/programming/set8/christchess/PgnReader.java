@@ -0,0 +1,383 @@
+package programming.set8.christchess;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Replays the games of a PGN file through {@link ChessData}.
+ *
+ * The file is mapped into memory window by window and parsed byte by byte, so files of any
+ * size are read with constant memory and without creating a String per line or move. Tag
+ * pairs are skipped, except for a {@code FEN} tag giving the starting position; comments,
+ * variations and annotations are skipped as well.
+ *
+ * Moves are given in standard algebraic notation. Castling, promotions and en passant do
+ * not exist in this game, so a game using them ends at that move and is reported as
+ * incomplete.
+ */
+public class PgnReader {
+
+    public static final int UNKNOWN_RESULT = -1;
+
+    private static final long WINDOW_SIZE = 64L * 1024 * 1024;
+
+    private static final String SAN_PIECES = "PNBRQK";
+    private static final byte[] FEN_TAG = "FEN".getBytes(StandardCharsets.US_ASCII);
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private MappedByteBuffer window;
+    private long windowStart;
+
+    private final ChessData data = new ChessData();
+    private final MoveList moves = new MoveList();
+
+    // the current token, or tag name / value
+    private byte[] token = new byte[256];
+    private int tokenLength;
+
+    private boolean inGame;
+    private boolean complete;
+    private String fen;
+
+    public PgnReader(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.fileSize = channel.size();
+        this.windowStart = 0;
+        this.window = map(0);
+    }
+
+    /**
+     * Reads all games of the file and closes it.
+     *
+     * @param visitor
+     *            receives the games
+     * @throws IOException
+     *             if the file cannot be read.
+     */
+    public void read(PgnVisitor visitor) throws IOException {
+        try {
+            int c = next();
+            while (c != -1) {
+                if (c <= ' ') {
+                    c = next();
+                } else if (c == '[') {
+                    if (inGame) {
+                        // a new game without the result of the previous one
+                        endGame(visitor, UNKNOWN_RESULT);
+                    }
+                    readTag();
+                    c = next();
+                } else if (c == '{') {
+                    c = skipTo('}');
+                } else if (c == ';') {
+                    c = skipTo('\n');
+                } else if (c == '(') {
+                    c = skipVariation();
+                } else if (c == '$') {
+                    c = readToken(c);
+                } else {
+                    c = readToken(c);
+                    handleToken(visitor);
+                }
+            }
+            if (inGame) {
+                endGame(visitor, UNKNOWN_RESULT);
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    private MappedByteBuffer map(long position) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW_SIZE, fileSize - position));
+    }
+
+    private int next() throws IOException {
+        if (!window.hasRemaining()) {
+            windowStart += window.capacity();
+            if (windowStart >= fileSize) {
+                return -1;
+            }
+            window = map(windowStart);
+        }
+        return window.get() & 0xFF;
+    }
+
+    private int skipTo(int end) throws IOException {
+        int c = next();
+        while (c != -1 && c != end) {
+            c = next();
+        }
+        return next();
+    }
+
+    private int skipVariation() throws IOException {
+        int depth = 1;
+        int c = next();
+        while (c != -1 && depth > 0) {
+            if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == '{') {
+                while (c != -1 && c != '}') {
+                    c = next();
+                }
+            }
+            c = next();
+        }
+        return c;
+    }
+
+    // reads a token starting with c into the token buffer, returns the byte after it
+    private int readToken(int c) throws IOException {
+        tokenLength = 0;
+        while (c > ' ' && c != '[' && c != '{' && c != '(' && c != ')' && c != ';') {
+            append(c);
+            c = next();
+        }
+        if (c == ')') {
+            c = next();
+        }
+        return c;
+    }
+
+    private void append(int c) {
+        if (tokenLength == token.length) {
+            byte[] larger = new byte[token.length * 2];
+            System.arraycopy(token, 0, larger, 0, tokenLength);
+            token = larger;
+        }
+        token[tokenLength++] = (byte) c;
+    }
+
+    // [Name "Value"], only the value of a FEN tag is kept
+    private void readTag() throws IOException {
+        tokenLength = 0;
+        int c = next();
+        while (c != -1 && c <= ' ') {
+            c = next();
+        }
+        while (c > ' ' && c != '"' && c != ']') {
+            append(c);
+            c = next();
+        }
+        boolean isFen = tokenIs(FEN_TAG);
+
+        while (c != -1 && c != '"' && c != ']') {
+            c = next();
+        }
+        if (c == '"') {
+            tokenLength = 0;
+            c = next();
+            while (c != -1 && c != '"') {
+                if (c == '\\') {
+                    c = next();
+                }
+                append(c);
+                c = next();
+            }
+            if (isFen) {
+                fen = new String(token, 0, tokenLength, StandardCharsets.US_ASCII);
+            }
+            while (c != -1 && c != ']') {
+                c = next();
+            }
+        }
+    }
+
+    private boolean tokenIs(byte[] text) {
+        if (tokenLength != text.length) {
+            return false;
+        }
+        for (int i = 0; i < tokenLength; i++) {
+            if (token[i] != text[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void handleToken(PgnVisitor visitor) {
+        int result = parseResult();
+        if (result != Integer.MIN_VALUE) {
+            if (!inGame) {
+                startGame(visitor);
+            }
+            endGame(visitor, result);
+            return;
+        }
+
+        // skip a move number like "12." or "12...", which may be glued to the move
+        int start = 0;
+        while (start < tokenLength && (token[start] >= '0' && token[start] <= '9' || token[start] == '.')) {
+            start++;
+        }
+        if (start == tokenLength) {
+            return;
+        }
+
+        if (!inGame) {
+            startGame(visitor);
+        }
+        if (!complete) {
+            return;
+        }
+
+        int move = parseSan(start);
+        if (move == Move.NONE) {
+            complete = false;
+            return;
+        }
+        visitor.move(data, move);
+        data.movePieceTo(data.getPieceAt(Move.from(move)), Move.toX(move), Move.toY(move));
+        data.togglePlayer();
+    }
+
+    private int parseResult() {
+        if (tokenLength == 1 && token[0] == '*') {
+            return UNKNOWN_RESULT;
+        }
+        if (tokenLength == 3 && token[1] == '-') {
+            if (token[0] == '1' && token[2] == '0') {
+                return ChessPiece.PLAYER1;
+            }
+            if (token[0] == '0' && token[2] == '1') {
+                return ChessPiece.PLAYER2;
+            }
+        }
+        if (tokenLength == 7 && token[0] == '1' && token[1] == '/' && token[3] == '-') {
+            return ChessPiece.NO_PLAYER;
+        }
+        return Integer.MIN_VALUE;
+    }
+
+    private void startGame(PgnVisitor visitor) {
+        inGame = true;
+        complete = true;
+        if (fen != null) {
+            try {
+                data.loadFen(fen);
+            } catch (IllegalArgumentException e) {
+                data.initNewGame();
+                complete = false;
+            }
+        } else {
+            data.initNewGame();
+        }
+        visitor.startGame(data);
+    }
+
+    private void endGame(PgnVisitor visitor, int result) {
+        visitor.endGame(data, result, complete);
+        inGame = false;
+        fen = null;
+    }
+
+    // finds the legal move meant by the SAN move in token[start..tokenLength)
+    private int parseSan(int start) {
+        int end = tokenLength;
+        while (end > start && (token[end - 1] == '+' || token[end - 1] == '#'
+                || token[end - 1] == '!' || token[end - 1] == '?')) {
+            end--;
+        }
+        if (end - start < 2 || token[start] == 'O' || token[start] == '0') {
+            // too short, or castling
+            return Move.NONE;
+        }
+
+        int type = ChessPiece.PAWN;
+        int i = start;
+        if (SAN_PIECES.indexOf(token[i]) > 0) {
+            type = SAN_PIECES.indexOf(token[i]);
+            i++;
+        }
+
+        int toX = ChessData.charToX(token[end - 2]);
+        int toY = ChessData.charToY(token[end - 1]);
+        if (!Bitboards.isOnBoard(toX, toY)) {
+            // e.g. a promotion like e8=Q or e8Q
+            return Move.NONE;
+        }
+
+        int fromX = -1;
+        int fromY = -1;
+        for (; i < end - 2; i++) {
+            if (token[i] >= 'a' && token[i] <= 'h') {
+                fromX = ChessData.charToX(token[i]);
+            } else if (token[i] >= '1' && token[i] <= '8') {
+                fromY = ChessData.charToY(token[i]);
+            }
+        }
+
+        data.generateLegalMoves(data.getActivePlayer(), moves);
+        int to = Bitboards.square(toX, toY);
+        int found = Move.NONE;
+        for (int j = 0; j < moves.size(); j++) {
+            int move = moves.get(j);
+            if (Move.to(move) != to || data.getPieceAt(Move.from(move)).getType() != type
+                    || (fromX >= 0 && Move.fromX(move) != fromX) || (fromY >= 0 && Move.fromY(move) != fromY)) {
+                continue;
+            }
+            // a pawn may jump over a piece in this game, but the move
+            // in the file was the single step
+            if (found == Move.NONE || type == ChessPiece.PAWN && Math.abs(Move.fromY(move) - toY) == 1) {
+                found = move;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Replays all games of a PGN file and reports how fast they were read.
+     *
+     * Usage: {@code PgnReader <file>}
+     *
+     * @param args
+     *            the command line arguments
+     * @throws IOException
+     *             if the file cannot be read.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: PgnReader <file>");
+            System.exit(1);
+        }
+
+        long[] counts = new long[3];
+        PgnVisitor counter = new PgnVisitor() {
+            @Override
+            public void startGame(ChessData data) {
+                counts[0]++;
+            }
+
+            @Override
+            public void move(ChessData data, int move) {
+                counts[1]++;
+            }
+
+            @Override
+            public void endGame(ChessData data, int result, boolean complete) {
+                if (!complete) {
+                    counts[2]++;
+                }
+            }
+        };
+
+        Path file = Paths.get(args[0]);
+        long start = System.nanoTime();
+        new PgnReader(file).read(counter);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%d games (%d incomplete), %d moves in %.3f s: %.0f games/s, %.1f MB/s%n",
+                counts[0], counts[2], counts[1], seconds, counts[0] / seconds,
+                file.toFile().length() / seconds / 1024 / 1024);
+        EngineStats.printReport(System.out);
+    }
+}
@@ -0,0 +1,40 @@
+package programming.set8.christchess;
+
+/**
+ * Receives the games read by a {@link PgnReader}. The position passed to the methods
+ * belongs to the reader and is reused for the next game, so it must not be kept.
+ */
+public interface PgnVisitor {
+
+    /**
+     * Called before the first move of a game.
+     *
+     * @param data
+     *            the starting position
+     */
+    void startGame(ChessData data);
+
+    /**
+     * Called for every move of a game, before the move is played.
+     *
+     * @param data
+     *            the position the move is played in
+     * @param move
+     *            the move, encoded by {@link Move}
+     */
+    void move(ChessData data, int move);
+
+    /**
+     * Called after the last move of a game.
+     *
+     * @param data
+     *            the final position
+     * @param result
+     *            the winning player, {@link ChessPiece#NO_PLAYER} for a draw, or
+     *            {@link PgnReader#UNKNOWN_RESULT}
+     * @param complete
+     *            {@code false} if the game was cut short because a move could not be
+     *            replayed under the rules of this game, e.g. castling or a promotion
+     */
+    void endGame(ChessData data, int result, boolean complete);
+}
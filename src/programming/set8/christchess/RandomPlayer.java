@@ -0,0 +1,25 @@
+package programming.set8.christchess;
+
+import java.util.Random;
+
+/**
+ * A player that picks one of its legal moves at random.
+ */
+public class RandomPlayer implements ChessPlayer {
+
+    private final Random random;
+    private final MoveList moves = new MoveList();
+
+    public RandomPlayer(long seed) {
+        this.random = new Random(seed);
+    }
+
+    @Override
+    public int selectMove(ChessData data) {
+        data.generateLegalMoves(data.getActivePlayer(), moves);
+        if (moves.isEmpty()) {
+            return Move.NONE;
+        }
+        return moves.get(random.nextInt(moves.size()));
+    }
+}
@@ -0,0 +1,334 @@
+package programming.set8.christchess;
+
+/**
+ * Negamax alpha-beta search with iterative deepening over a {@link ChessData} position.
+ *
+ * Moves are tried in the order: best move stored in the transposition table, captures by
+ * most valuable victim and least valuable attacker, killer moves, the rest. A quiescence
+ * search follows the captures at the leaves. Positions found in the endgame tables, see
+ * {@link Tablebases}, are not searched any further. The search stops as soon as its time budget is
+ * used up and returns the best move of the deepest completed iteration.
+ *
+ * The search makes and unmakes moves on the position it was given, which is restored when
+ * {@link #findBestMove(long, int)} returns. Position and search belong to the thread running
+ * the search; only {@link #stop()} may be called from other threads, and the transposition
+ * table may be shared, see {@link ParallelSearch}.
+ */
+public class Search {
+
+    public static final int MATE = 30000;
+    public static final int INFINITY = 32000;
+    public static final int MAX_PLY = 64;
+
+    // a time budget in milliseconds that does not run out
+    public static final long NO_TIME_LIMIT = Long.MAX_VALUE / 4_000_000L;
+
+    private static final int TT_MOVE_ORDER = 1 << 24;
+    private static final int CAPTURE_ORDER = 1 << 20;
+    private static final int KILLER_ORDER = 1 << 16;
+
+    private final ChessData data;
+    private final TranspositionTable table;
+
+    private final MoveList[] moveLists = new MoveList[MAX_PLY + 1];
+    private final int[][] orderKeys = new int[MAX_PLY + 1][];
+    private final int[][] killers = new int[MAX_PLY + 1][2];
+
+    private long deadline;
+    private volatile boolean stopped;
+    private long nodes;
+    private int rootBestMove;
+    private int completedDepth;
+    private int score;
+
+    public Search(ChessData data, TranspositionTable table) {
+        this.data = data;
+        this.table = table;
+        for (int ply = 0; ply <= MAX_PLY; ply++) {
+            moveLists[ply] = new MoveList();
+            orderKeys[ply] = new int[256];
+        }
+    }
+
+    /**
+     * Searches the current position with increasing depth until the time budget or the
+     * maximum depth is reached.
+     *
+     * @param millis
+     *            the time budget in milliseconds
+     * @param maxDepth
+     *            the maximum depth in plies
+     * @return the best move found for the active player, or {@link Move#NONE} if there is
+     *         no legal move.
+     */
+    public int findBestMove(long millis, int maxDepth) {
+        stopped = false;
+        table.newSearch();
+        return findBestMove(millis, maxDepth, 1);
+    }
+
+    // searches without starting a new table generation, as the helpers of a
+    // parallel search share the table; they may also skip the first depths.
+    // a stop() before the call is not forgotten, so helpers can be cancelled
+    // before they start
+    int findBestMove(long millis, int maxDepth, int startDepth) {
+        deadline = System.nanoTime() + millis * 1_000_000L;
+        nodes = 0;
+        completedDepth = 0;
+        score = 0;
+        for (int[] killer : killers) {
+            killer[0] = Move.NONE;
+            killer[1] = Move.NONE;
+        }
+
+        MoveList rootMoves = new MoveList();
+        data.generateLegalMoves(data.getActivePlayer(), rootMoves);
+        if (rootMoves.isEmpty()) {
+            return Move.NONE;
+        }
+        int bestMove = rootMoves.get(0);
+
+        for (int depth = Math.min(startDepth, maxDepth); depth <= Math.min(maxDepth, MAX_PLY); depth++) {
+            rootBestMove = Move.NONE;
+            int result = negamax(depth, 0, -INFINITY, INFINITY);
+            if (stopped) {
+                // the first root move tried is the previous best one, so a
+                // different move found before the time ran out beats it
+                if (rootBestMove != Move.NONE) {
+                    bestMove = rootBestMove;
+                }
+                break;
+            }
+
+            bestMove = rootBestMove;
+            score = result;
+            completedDepth = depth;
+            if (Math.abs(result) >= MATE - MAX_PLY) {
+                break;
+            }
+        }
+        return bestMove;
+    }
+
+    /**
+     * Makes a running search return as soon as possible. May be called from any thread.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    public int getCompletedDepth() {
+        return completedDepth;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    private int negamax(int depth, int ply, int alpha, int beta) {
+        if (isOutOfTime()) {
+            return 0;
+        }
+
+        if (ply > 0) {
+            int value = Tablebases.probe(data);
+            if (value != Tablebase.INVALID) {
+                return tablebaseScore(value, ply);
+            }
+        }
+
+        int player = data.getActivePlayer();
+        boolean inCheck = data.isInCheck(player);
+        if (inCheck) {
+            depth++;
+        }
+        if (depth <= 0 || ply >= MAX_PLY) {
+            return quiesce(ply, alpha, beta);
+        }
+
+        long key = data.getHash();
+        long entry = table.probe(key);
+        int ttMove = Move.NONE;
+        if (entry != 0L) {
+            ttMove = TranspositionTable.move(entry);
+            if (ply > 0 && TranspositionTable.depth(entry) >= depth) {
+                int ttScore = fromTable(TranspositionTable.score(entry), ply);
+                int bound = TranspositionTable.bound(entry);
+                if (bound == TranspositionTable.EXACT
+                        || (bound == TranspositionTable.LOWER_BOUND && ttScore >= beta)
+                        || (bound == TranspositionTable.UPPER_BOUND && ttScore <= alpha)) {
+                    return ttScore;
+                }
+            }
+        }
+
+        MoveList moves = moveLists[ply];
+        data.generateLegalMoves(player, moves);
+        if (moves.isEmpty()) {
+            // checkmate, or no move at all without being in check
+            return inCheck ? -MATE + ply : 0;
+        }
+        scoreMoves(moves, ply, ttMove);
+
+        int originalAlpha = alpha;
+        int best = -INFINITY;
+        int bestMove = Move.NONE;
+        for (int i = 0; i < moves.size(); i++) {
+            int move = nextMove(moves, ply, i);
+            boolean isCapture = data.getPieceAt(Move.to(move)) != null;
+
+            data.makeMove(move);
+            int result = -negamax(depth - 1, ply + 1, -beta, -alpha);
+            data.unmakeMove();
+            if (stopped) {
+                return 0;
+            }
+
+            if (result > best) {
+                best = result;
+                bestMove = move;
+                if (ply == 0) {
+                    rootBestMove = move;
+                }
+            }
+            if (result > alpha) {
+                alpha = result;
+            }
+            if (alpha >= beta) {
+                if (!isCapture && killers[ply][0] != move) {
+                    killers[ply][1] = killers[ply][0];
+                    killers[ply][0] = move;
+                }
+                break;
+            }
+        }
+
+        int bound = best <= originalAlpha ? TranspositionTable.UPPER_BOUND
+                : best >= beta ? TranspositionTable.LOWER_BOUND : TranspositionTable.EXACT;
+        table.store(key, bestMove, toTable(best, ply), depth, bound);
+        return best;
+    }
+
+    private int quiesce(int ply, int alpha, int beta) {
+        if (isOutOfTime()) {
+            return 0;
+        }
+
+        int value = Tablebases.probe(data);
+        if (value != Tablebase.INVALID) {
+            return tablebaseScore(value, ply);
+        }
+
+        int standPat = Evaluator.evaluate(data);
+        if (standPat >= beta || ply >= MAX_PLY) {
+            return standPat;
+        }
+        if (standPat > alpha) {
+            alpha = standPat;
+        }
+
+        MoveList moves = moveLists[ply];
+        data.generateLegalCaptures(data.getActivePlayer(), moves);
+        scoreMoves(moves, ply, Move.NONE);
+
+        for (int i = 0; i < moves.size(); i++) {
+            data.makeMove(nextMove(moves, ply, i));
+            int result = -quiesce(ply + 1, -beta, -alpha);
+            data.unmakeMove();
+            if (stopped) {
+                return 0;
+            }
+
+            if (result >= beta) {
+                return result;
+            }
+            if (result > alpha) {
+                alpha = result;
+            }
+        }
+        return alpha;
+    }
+
+    private boolean isOutOfTime() {
+        if ((++nodes & 1023) == 0 && System.nanoTime() > deadline) {
+            stopped = true;
+        }
+        return stopped;
+    }
+
+    private void scoreMoves(MoveList moves, int ply, int ttMove) {
+        int[] keys = orderKeys[ply];
+        if (keys.length < moves.size()) {
+            keys = orderKeys[ply] = new int[moves.size()];
+        }
+
+        for (int i = 0; i < moves.size(); i++) {
+            int move = moves.get(i);
+            ChessPiece victim = data.getPieceAt(Move.to(move));
+            if (move == ttMove) {
+                keys[i] = TT_MOVE_ORDER;
+            } else if (victim != null) {
+                keys[i] = CAPTURE_ORDER + victim.getType() * 8 - data.getPieceAt(Move.from(move)).getType();
+            } else if (move == killers[ply][0] || move == killers[ply][1]) {
+                keys[i] = KILLER_ORDER;
+            } else {
+                keys[i] = 0;
+            }
+        }
+    }
+
+    // selection sort step: moves the best remaining move to index i
+    private int nextMove(MoveList moves, int ply, int i) {
+        int[] keys = orderKeys[ply];
+        int best = i;
+        for (int j = i + 1; j < moves.size(); j++) {
+            if (keys[j] > keys[best]) {
+                best = j;
+            }
+        }
+
+        int move = moves.get(best);
+        moves.set(best, moves.get(i));
+        moves.set(i, move);
+        int key = keys[best];
+        keys[best] = keys[i];
+        keys[i] = key;
+        return move;
+    }
+
+    // a mate in d plies seen from here is a mate in ply + d plies from the root
+    private static int tablebaseScore(int value, int ply) {
+        if (value > 0) {
+            return MATE - ply - value;
+        }
+        if (value < 0) {
+            return -MATE + ply - value - 1;
+        }
+        return 0;
+    }
+
+    // mate scores are stored relative to the node, not to the root
+    private static int toTable(int score, int ply) {
+        if (score >= MATE - MAX_PLY) {
+            return score + ply;
+        }
+        if (score <= -MATE + MAX_PLY) {
+            return score - ply;
+        }
+        return score;
+    }
+
+    private static int fromTable(int score, int ply) {
+        if (score >= MATE - MAX_PLY) {
+            return score - ply;
+        }
+        if (score <= -MATE + MAX_PLY) {
+            return score + ply;
+        }
+        return score;
+    }
+}
@@ -0,0 +1,125 @@
+package programming.set8.christchess;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The exact result of every position of an ending of both kings and one other piece, e.g.
+ * king and queen against king. Tables are written by {@link TablebaseGenerator}.
+ *
+ * The table stores one byte per position, outside the Java heap: {@code 0} for a draw,
+ * {@code d > 0} if the player to move mates in {@code d} plies, {@code -(d + 1)} if the
+ * player to move is mated in {@code d} plies, and {@link #INVALID} for positions that
+ * cannot occur. The side with the piece is always stored as {@link ChessPiece#PLAYER1};
+ * positions where it belongs to {@link ChessPiece#PLAYER2} are mirrored, which keeps pawns
+ * moving in the right direction.
+ */
+public class Tablebase {
+
+    public static final int INVALID = Byte.MIN_VALUE;
+
+    // player to move, strong king, weak king, piece
+    static final int SIZE = 2 * 64 * 64 * 64;
+
+    private final int type;
+    private final ByteBuffer values;
+
+    Tablebase(int type, ByteBuffer values) {
+        this.type = type;
+        this.values = values;
+    }
+
+    /**
+     * Maps a table file into memory.
+     *
+     * @param file
+     *            the table file
+     * @param type
+     *            the type of the piece besides the kings
+     * @return the table.
+     * @throws IOException
+     *             if the file cannot be read or has the wrong size.
+     */
+    public static Tablebase load(Path file, int type) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() != SIZE) {
+                throw new IOException("not a tablebase: " + file);
+            }
+            return new Tablebase(type, channel.map(FileChannel.MapMode.READ_ONLY, 0, SIZE));
+        }
+    }
+
+    /**
+     * Writes the table to a file that can be read by {@link #load(Path, int)}.
+     *
+     * @param file
+     *            the table file
+     * @throws IOException
+     *             if the file cannot be written.
+     */
+    public void save(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = values.duplicate();
+            buffer.clear();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Returns the file name of the table for a piece type, e.g. {@code KQK.tb}.
+     *
+     * @param type
+     *            the type of the piece besides the kings
+     * @return the file name.
+     */
+    public static String fileName(int type) {
+        return "K" + "PNBRQK".charAt(type) + "K.tb";
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    /**
+     * Looks up a position of this ending.
+     *
+     * @param data
+     *            a position with both kings and the given piece only
+     * @param piece
+     *            the piece besides the kings, of this table's type
+     * @return the value for the active player, encoded as described above.
+     */
+    public int probe(ChessData data, ChessPiece piece) {
+        int strong = piece.getPlayer();
+        int weak = ChessData.opponentOf(strong);
+        long strongKings = data.getPieceMask(strong, ChessPiece.KING);
+        long weakKings = data.getPieceMask(weak, ChessPiece.KING);
+        if (strongKings == 0L || weakKings == 0L) {
+            return INVALID;
+        }
+        int strongKing = Long.numberOfTrailingZeros(strongKings);
+        int weakKing = Long.numberOfTrailingZeros(weakKings);
+        int square = Bitboards.square(piece.getX(), piece.getY());
+        if (strong == ChessPiece.PLAYER2) {
+            // flip the board so the piece belongs to the first player
+            strongKing ^= 56;
+            weakKing ^= 56;
+            square ^= 56;
+        }
+        return get(index(data.getActivePlayer() == strong, strongKing, weakKing, square));
+    }
+
+    int get(int index) {
+        return values.get(index);
+    }
+
+    static int index(boolean strongToMove, int strongKing, int weakKing, int square) {
+        return (strongToMove ? 0 : 1 << 18) | strongKing << 12 | weakKing << 6 | square;
+    }
+}
@@ -0,0 +1,201 @@
+package programming.set8.christchess;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Generates a {@link Tablebase} by retrograde analysis. The moves of every position are
+ * generated once by {@link ChessData}, so the tables follow the rules of this game, then
+ * the results are worked out backwards from the checkmates: a position is won in {@code n}
+ * plies if a move leads to a position lost in {@code n - 1} plies, and lost in {@code n}
+ * plies if all moves lead to positions won in at most {@code n - 1} plies. Positions left
+ * over are draws. Every step looks at all positions in parallel.
+ *
+ * Usage: {@code TablebaseGenerator <directory> [threads]}, which writes the tables for
+ * king and queen, king and rook, and king and pawn against king.
+ */
+public class TablebaseGenerator {
+
+    // not worked out yet, only used while generating
+    private static final byte UNKNOWN = Byte.MAX_VALUE;
+
+    // a move capturing the piece, which leaves a drawn position
+    private static final int DRAWN = -1;
+
+    private final int type;
+    private final ForkJoinPool pool;
+
+    private final int[][] successors = new int[Tablebase.SIZE][];
+    private final ByteBuffer values = ByteBuffer.allocateDirect(Tablebase.SIZE);
+
+    private final ThreadLocal<ChessData> positions = ThreadLocal.withInitial(ChessData::new);
+    private final ThreadLocal<MoveList> moveLists = ThreadLocal.withInitial(MoveList::new);
+
+    private TablebaseGenerator(int type, ForkJoinPool pool) {
+        this.type = type;
+        this.pool = pool;
+    }
+
+    /**
+     * Generates the table of the kings and one piece.
+     *
+     * @param type
+     *            the type of the piece besides the kings
+     * @param pool
+     *            the threads to generate the table with
+     * @return the table.
+     * @throws InterruptedException
+     *             if interrupted while waiting for the threads.
+     */
+    public static Tablebase generate(int type, ForkJoinPool pool) throws InterruptedException {
+        if (type < ChessPiece.PAWN || type >= ChessPiece.KING) {
+            throw new IllegalArgumentException("no table for piece type " + type);
+        }
+        return new TablebaseGenerator(type, pool).generate();
+    }
+
+    private Tablebase generate() throws InterruptedException {
+        run(() -> IntStream.range(0, Tablebase.SIZE).parallel().forEach(this::initialize));
+
+        for (int plies = 1;; plies++) {
+            int distance = plies;
+            int[] changed = new int[1];
+            run(() -> changed[0] = IntStream.range(0, Tablebase.SIZE).parallel()
+                    .map(index -> resolve(index, distance) ? 1 : 0).sum());
+            if (changed[0] == 0) {
+                break;
+            }
+        }
+
+        run(() -> IntStream.range(0, Tablebase.SIZE).parallel().forEach(index -> {
+            if (values.get(index) == UNKNOWN) {
+                values.put(index, (byte) 0);
+            }
+        }));
+        return new Tablebase(type, values);
+    }
+
+    // runs a parallel stream on the pool instead of the common pool
+    private void run(Runnable task) throws InterruptedException {
+        try {
+            pool.submit(task).get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    // sets up a position, finds its successors and the checkmates and stalemates
+    private void initialize(int index) {
+        int strongKing = index >>> 12 & 63;
+        int weakKing = index >>> 6 & 63;
+        int square = index & 63;
+        int active = index >>> 18 == 0 ? ChessPiece.PLAYER1 : ChessPiece.PLAYER2;
+        if (strongKing == weakKing || strongKing == square || weakKing == square) {
+            values.put(index, (byte) Tablebase.INVALID);
+            return;
+        }
+
+        ChessData data = positions.get();
+        data.removeAllPieces();
+        data.addNewPiece(ChessPiece.KING, ChessPiece.PLAYER1, strongKing % 8, strongKing / 8);
+        data.addNewPiece(ChessPiece.KING, ChessPiece.PLAYER2, weakKing % 8, weakKing / 8);
+        data.addNewPiece(type, ChessPiece.PLAYER1, square % 8, square / 8);
+        data.setActivePlayer(active);
+        if (data.isInCheck(ChessData.opponentOf(active))) {
+            // the player who just moved cannot be in check
+            values.put(index, (byte) Tablebase.INVALID);
+            return;
+        }
+
+        MoveList moves = moveLists.get();
+        data.generateLegalMoves(active, moves);
+        if (moves.isEmpty()) {
+            values.put(index, data.isInCheck(active) ? (byte) -1 : (byte) 0);
+            return;
+        }
+
+        int[] next = new int[moves.size()];
+        for (int i = 0; i < moves.size(); i++) {
+            int from = Move.from(moves.get(i));
+            int to = Move.to(moves.get(i));
+            if (to == square) {
+                next[i] = DRAWN;
+            } else if (from == strongKing) {
+                next[i] = Tablebase.index(false, to, weakKing, square);
+            } else if (from == weakKing) {
+                next[i] = Tablebase.index(true, strongKing, to, square);
+            } else {
+                next[i] = Tablebase.index(false, strongKing, weakKing, to);
+            }
+        }
+        successors[index] = next;
+        values.put(index, UNKNOWN);
+    }
+
+    // values written by other threads in the same step have the current distance
+    // and are ignored, so the result does not depend on the order
+    private boolean resolve(int index, int plies) {
+        if (values.get(index) != UNKNOWN) {
+            return false;
+        }
+
+        boolean allWon = true;
+        for (int next : successors[index]) {
+            int value = next == DRAWN ? 0 : values.get(next);
+            if (value == -plies) {
+                // lost in plies - 1 for the opponent
+                values.put(index, (byte) plies);
+                return true;
+            }
+            if (value == UNKNOWN || value <= 0 || value >= plies) {
+                allWon = false;
+            }
+        }
+        if (allWon) {
+            values.put(index, (byte) -(plies + 1));
+            return true;
+        }
+        return false;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.err.println("Usage: TablebaseGenerator <directory> [threads]");
+            System.exit(1);
+        }
+
+        Path directory = Paths.get(args[0]);
+        Files.createDirectories(directory);
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+
+        for (int type : new int[] { ChessPiece.QUEEN, ChessPiece.ROOK, ChessPiece.PAWN }) {
+            long start = System.nanoTime();
+            Tablebase table = generate(type, pool);
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            int[] counts = new int[3];
+            int longest = 0;
+            for (int index = 0; index < Tablebase.SIZE; index++) {
+                int value = table.get(index);
+                if (value == Tablebase.INVALID) {
+                    continue;
+                }
+                counts[value > 0 ? 0 : value == 0 ? 1 : 2]++;
+                longest = Math.max(longest, value);
+            }
+
+            Path file = directory.resolve(Tablebase.fileName(type));
+            table.save(file);
+            System.out.printf("%s: %d won, %d drawn, %d lost, longest mate %d plies, %.3f s on %d threads%n",
+                    file, counts[0], counts[1], counts[2], longest, seconds, threads);
+        }
+        pool.shutdown();
+    }
+}
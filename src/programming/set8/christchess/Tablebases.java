@@ -0,0 +1,91 @@
+package programming.set8.christchess;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * The endgame tables in use. {@link ChessData#isCheckmate()} and {@link Search} look up
+ * every position that has a table, instead of working it out.
+ */
+public final class Tablebases {
+
+    // indexed by the type of the piece besides the kings
+    private static volatile Tablebase[] tables = new Tablebase[6];
+
+    private Tablebases() {
+    }
+
+    /**
+     * Uses a table from now on, replacing the one of the same ending.
+     *
+     * @param table
+     *            the table
+     */
+    public static synchronized void install(Tablebase table) {
+        Tablebase[] copy = tables.clone();
+        copy[table.getType()] = table;
+        tables = copy;
+    }
+
+    /**
+     * Stops using any table.
+     */
+    public static synchronized void clear() {
+        tables = new Tablebase[6];
+    }
+
+    /**
+     * Uses all tables found in a directory, named as by {@link Tablebase#fileName(int)}.
+     *
+     * @param directory
+     *            the directory of the table files
+     * @return the number of tables found.
+     * @throws IOException
+     *             if a table cannot be read.
+     */
+    public static int loadAll(Path directory) throws IOException {
+        int count = 0;
+        for (int type = ChessPiece.PAWN; type < ChessPiece.KING; type++) {
+            Path file = directory.resolve(Tablebase.fileName(type));
+            if (Files.isRegularFile(file)) {
+                install(Tablebase.load(file, type));
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Looks up a position in the tables.
+     *
+     * @param data
+     *            the position
+     * @return the value for the active player as described by {@link Tablebase}, or
+     *         {@link Tablebase#INVALID} if there is no table for the position.
+     */
+    public static int probe(ChessData data) {
+        List<ChessPiece> pieces = data.getPieces();
+        if (pieces.size() != 3) {
+            return Tablebase.INVALID;
+        }
+
+        ChessPiece piece = null;
+        for (int i = 0; i < 3; i++) {
+            ChessPiece candidate = pieces.get(i);
+            if (candidate.getType() != ChessPiece.KING) {
+                if (piece != null) {
+                    return Tablebase.INVALID;
+                }
+                piece = candidate;
+            }
+        }
+        if (piece == null) {
+            return Tablebase.INVALID;
+        }
+
+        Tablebase table = tables[piece.getType()];
+        return table == null ? Tablebase.INVALID : table.probe(data, piece);
+    }
+}
@@ -0,0 +1,169 @@
+package programming.set8.christchess;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongFunction;
+
+/**
+ * Plays many complete games between two players without a view, each game on a thread of
+ * a fixed pool, and counts the results. The players change colours every game.
+ *
+ * Usage: {@code Tournament <games> <threads> <playerA> <playerB> [maxPlies] [book] [tables]},
+ * where a player is {@code random}, {@code greedy} or {@code search:<millis per move>}. With an
+ * opening book both players play from it while the position is in the book; {@code -} stands
+ * for no book. The endgame tables found in the directory {@code tables} are used by all
+ * players that search.
+ */
+public class Tournament {
+
+    private final LongFunction<ChessPlayer> playerA;
+    private final LongFunction<ChessPlayer> playerB;
+    private final int maxPlies;
+
+    private final LongAdder winsA = new LongAdder();
+    private final LongAdder winsB = new LongAdder();
+    private final LongAdder draws = new LongAdder();
+    private final LongAdder plies = new LongAdder();
+
+    /**
+     * Creates a tournament between two kinds of players. Players are not shared between
+     * games, so every game asks the factories for new ones.
+     *
+     * @param playerA
+     *            creates the first player from a per-game seed
+     * @param playerB
+     *            creates the second player from a per-game seed
+     * @param maxPlies
+     *            the number of plies after which a game counts as a draw
+     */
+    public Tournament(LongFunction<ChessPlayer> playerA, LongFunction<ChessPlayer> playerB, int maxPlies) {
+        this.playerA = playerA;
+        this.playerB = playerB;
+        this.maxPlies = maxPlies;
+    }
+
+    public void run(int games, int threads) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        for (int i = 0; i < games; i++) {
+            long game = i;
+            pool.execute(() -> playGame(game));
+        }
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+    }
+
+    private void playGame(long game) {
+        ChessPlayer a = playerA.apply(2 * game);
+        ChessPlayer b = playerB.apply(2 * game + 1);
+        boolean aIsWhite = game % 2 == 0;
+
+        int winner = playGame(aIsWhite ? a : b, aIsWhite ? b : a);
+        if (winner == ChessPiece.NO_PLAYER) {
+            draws.increment();
+        } else if ((winner == ChessPiece.PLAYER1) == aIsWhite) {
+            winsA.increment();
+        } else {
+            winsB.increment();
+        }
+    }
+
+    /**
+     * Plays one game from the initial position.
+     *
+     * @param white
+     *            the player moving first
+     * @param black
+     *            the other player
+     * @return the winning player, or {@link ChessPiece#NO_PLAYER} for a draw, including
+     *         stalemate, insufficient material and threefold repetition.
+     */
+    public int playGame(ChessPlayer white, ChessPlayer black) {
+        ChessData data = new ChessData();
+        data.initNewGame();
+
+        for (int ply = 0; ply < maxPlies; ply++) {
+            int player = data.getActivePlayer();
+            int result = GameTermination.check(data);
+            if (result != GameTermination.ONGOING) {
+                plies.add(ply);
+                return result == GameTermination.CHECKMATE ? ChessData.opponentOf(player) : ChessPiece.NO_PLAYER;
+            }
+            int move = (player == ChessPiece.PLAYER1 ? white : black).selectMove(data);
+            data.movePieceTo(data.getPieceAt(Move.from(move)), Move.toX(move), Move.toY(move));
+            data.togglePlayer();
+        }
+        plies.add(maxPlies);
+        return ChessPiece.NO_PLAYER;
+    }
+
+    public long getWinsA() {
+        return winsA.sum();
+    }
+
+    public long getWinsB() {
+        return winsB.sum();
+    }
+
+    public long getDraws() {
+        return draws.sum();
+    }
+
+    public long getPlies() {
+        return plies.sum();
+    }
+
+    static LongFunction<ChessPlayer> parsePlayer(String type) {
+        if (type.equals("random")) {
+            return RandomPlayer::new;
+        }
+        if (type.equals("greedy")) {
+            return GreedyPlayer::new;
+        }
+        if (type.startsWith("search:")) {
+            long millis = Long.parseLong(type.substring("search:".length()));
+            return seed -> new ComputerPlayer(millis, Search.MAX_PLY, new ParallelSearch(1, new TranspositionTable(4)));
+        }
+        throw new IllegalArgumentException("unknown player: " + type);
+    }
+
+    // the book is mapped once and shared by the players of all games
+    static LongFunction<ChessPlayer> withBook(OpeningBook book, LongFunction<ChessPlayer> player) {
+        return seed -> new BookPlayer(book, player.apply(seed), seed);
+    }
+
+    public static void main(String[] args) throws InterruptedException, IOException {
+        if (args.length < 4) {
+            System.err.println("Usage: Tournament <games> <threads> <playerA> <playerB> [maxPlies] [book] [tables]");
+            System.exit(1);
+        }
+
+        int games = Integer.parseInt(args[0]);
+        int threads = Integer.parseInt(args[1]);
+        int maxPlies = args.length > 4 ? Integer.parseInt(args[4]) : 200;
+        LongFunction<ChessPlayer> playerA = parsePlayer(args[2]);
+        LongFunction<ChessPlayer> playerB = parsePlayer(args[3]);
+        if (args.length > 5 && !args[5].equals("-")) {
+            OpeningBook book = OpeningBook.open(Paths.get(args[5]));
+            playerA = withBook(book, playerA);
+            playerB = withBook(book, playerB);
+        }
+        if (args.length > 6) {
+            System.out.printf("%d endgame tables loaded%n", Tablebases.loadAll(Paths.get(args[6])));
+        }
+        Tournament tournament = new Tournament(playerA, playerB, maxPlies);
+
+        long start = System.nanoTime();
+        tournament.run(games, threads);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%s vs %s: %d wins, %d losses, %d draws%n", args[2], args[3],
+                tournament.getWinsA(), tournament.getWinsB(), tournament.getDraws());
+        System.out.printf("%d games, %d plies in %.3f s: %.1f games/s, %.0f plies/s%n", games,
+                tournament.getPlies(), seconds, games / seconds, tournament.getPlies() / seconds);
+        EngineStats.printReport(System.out);
+    }
+}
@@ -0,0 +1,143 @@
+package programming.set8.christchess;
+
+import java.util.Arrays;
+
+/**
+ * A fixed-size hash table of search results keyed by {@link ChessData#getHash()}.
+ *
+ * The table is made of two primitive arrays, so it holds no objects and its size is fixed
+ * by the memory budget. Entries are grouped in buckets of two: the first slot keeps the
+ * deepest result of the current search, the second one always takes the newest result.
+ * Results are packed into a single {@code long}, see {@link #probe(long)}.
+ *
+ * One table may be shared by several searching threads without locking. Each slot stores
+ * the key XOR-ed with the entry, so an entry torn by two threads writing the same slot at
+ * once no longer matches its key and reads as a miss instead of a wrong result.
+ */
+public class TranspositionTable {
+
+    public static final int EXACT = 0;
+    public static final int LOWER_BOUND = 1;
+    public static final int UPPER_BOUND = 2;
+
+    private static final int ENTRY_BYTES = 2 * Long.BYTES;
+
+    // set in every stored entry, so an empty slot never looks like a hit
+    private static final long VALID = 1L << 63;
+
+    private final long[] keys;
+    private final long[] entries;
+    private final int mask;
+    private volatile int age;
+
+    /**
+     * Creates a table using at most {@code megabytes} of memory, rounded down to a power of
+     * two number of entries.
+     *
+     * @param megabytes
+     *            the memory budget
+     */
+    public TranspositionTable(int megabytes) {
+        long budget = Math.max(1L, megabytes) * 1024 * 1024 / ENTRY_BYTES;
+        int size = Integer.highestOneBit((int) Math.min(budget, 1 << 30));
+        this.keys = new long[size];
+        this.entries = new long[size];
+        this.mask = size - 2;
+    }
+
+    public int size() {
+        return keys.length;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0L);
+        Arrays.fill(entries, 0L);
+        age = 0;
+    }
+
+    /**
+     * Marks the start of a new search, so results of earlier searches are replaced first.
+     */
+    public void newSearch() {
+        age = (age + 1) & 0xFF;
+    }
+
+    /**
+     * Looks up the position with the given hash.
+     *
+     * @param key
+     *            the position hash
+     * @return the packed entry, to be read with {@link #move(long)}, {@link #score(long)},
+     *         {@link #depth(long)} and {@link #bound(long)}, or {@code 0} if there is none.
+     */
+    public long probe(long key) {
+        int index = (int) key & mask;
+        for (int i = index; i < index + 2; i++) {
+            long entry = entries[i];
+            if (entry != 0L && (keys[i] ^ entry) == key) {
+                return entry;
+            }
+        }
+        return 0L;
+    }
+
+    /**
+     * Stores a search result for the position with the given hash.
+     *
+     * @param key
+     *            the position hash
+     * @param move
+     *            the best move found, or {@link Move#NONE}
+     * @param score
+     *            the score, which must fit in 16 bits
+     * @param depth
+     *            the remaining depth the result was searched to
+     * @param bound
+     *            one of {@link #EXACT}, {@link #LOWER_BOUND} or {@link #UPPER_BOUND}
+     */
+    public void store(long key, int move, int score, int depth, int bound) {
+        int index = (int) key & mask;
+        int slot = index + 1;
+
+        long first = entries[index];
+        if (first == 0L || (keys[index] ^ first) == key
+                || age(first) != age || depth(first) <= depth) {
+            slot = index;
+        }
+
+        // keep the best move of an earlier search of this position
+        long old = entries[slot];
+        if (move == Move.NONE && old != 0L && (keys[slot] ^ old) == key) {
+            move = move(old);
+        }
+
+        long entry = VALID
+                | (move & 0xFFFFL)
+                | ((score & 0xFFFFL) << 16)
+                | ((long) Math.min(Math.max(depth, 0), 0xFF) << 32)
+                | ((long) bound << 40)
+                | ((long) age << 42);
+        keys[slot] = key ^ entry;
+        entries[slot] = entry;
+    }
+
+    public static int move(long entry) {
+        return (int) (entry & 0xFFFF);
+    }
+
+    public static int score(long entry) {
+        return (short) (entry >>> 16);
+    }
+
+    public static int depth(long entry) {
+        return (int) ((entry >>> 32) & 0xFF);
+    }
+
+    public static int bound(long entry) {
+        return (int) ((entry >>> 40) & 0x3);
+    }
+
+    private static int age(long entry) {
+        return (int) ((entry >>> 42) & 0xFF);
+    }
+}
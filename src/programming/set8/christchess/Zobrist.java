@@ -0,0 +1,35 @@
+package programming.set8.christchess;
+
+import java.util.Random;
+
+/**
+ * Random keys for Zobrist hashing: the hash of a position is the XOR of the key of every
+ * piece on its square, plus {@link #PLAYER2_KEY} if the second player is to move. The
+ * keys come from a fixed seed, so hashes are stable across runs and may be stored in files.
+ */
+final class Zobrist {
+
+    // indexed by player, piece type and square
+    static final long[][][] PIECE_KEYS = new long[3][ChessPiece.KING + 1][Bitboards.SQUARES];
+
+    static final long PLAYER2_KEY;
+
+    static {
+        Random random = new Random(0x5EED_C4E5L);
+        for (int player = ChessPiece.PLAYER1; player <= ChessPiece.PLAYER2; player++) {
+            for (int type = ChessPiece.PAWN; type <= ChessPiece.KING; type++) {
+                for (int sq = 0; sq < Bitboards.SQUARES; sq++) {
+                    PIECE_KEYS[player][type][sq] = random.nextLong();
+                }
+            }
+        }
+        PLAYER2_KEY = random.nextLong();
+    }
+
+    private Zobrist() {
+    }
+
+    static long playerKey(int player) {
+        return player == ChessPiece.PLAYER2 ? PLAYER2_KEY : 0L;
+    }
+}
@@ -0,0 +1,147 @@
+package programming.set8.links;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * A linked list of {@code double} values with the contract of {@link ElementList}, kept like
+ * {@link IntLinkedElement} in parallel primitive arrays, twelve bytes per element.
+ *
+ * Values are compared as by {@link Double#equals(Object)}, so {@code NaN} is found and
+ * {@code 0.0} and {@code -0.0} are different values.
+ */
+public class DoubleLinkedElement extends PrimitiveLinkedElements {
+
+    private double[] values;
+
+    public DoubleLinkedElement() {
+        this(16);
+    }
+
+    /**
+     * Creates an empty list with room for the given number of elements.
+     *
+     * @param capacity
+     *            the number of elements the list can hold before its arrays grow
+     */
+    public DoubleLinkedElement(int capacity) {
+        super(capacity);
+        this.values = new double[capacity];
+    }
+
+    @Override
+    void growValues(int capacity) {
+        values = Arrays.copyOf(values, capacity);
+    }
+
+    /**
+     * Returns the value at the given index.
+     *
+     * @param i
+     *            0-based index of the value to return.
+     * @return the value.
+     * @throws IndexOutOfBoundsException
+     *             if there is no element with that index.
+     */
+    public double get(int i) {
+        return values[slotAt(i)];
+    }
+
+    /**
+     * Replaces the value at the given index.
+     *
+     * @param i
+     *            0-based index of the value to replace.
+     * @param newVal
+     *            the new value.
+     * @return the value that was replaced.
+     * @throws IndexOutOfBoundsException
+     *             if there is no element with that index.
+     */
+    public double set(int i, double newVal) {
+        int slot = slotAt(i);
+        double oldVal = values[slot];
+        values[slot] = newVal;
+        return oldVal;
+    }
+
+    /**
+     * Returns the index of the first element carrying the given value.
+     *
+     * @param val
+     *            the value to search for.
+     * @return the index, or -1 if no element carries the value.
+     */
+    public int firstIndexOf(double val) {
+        int index = 0;
+        for (int slot = head; slot != NONE; slot = next[slot]) {
+            if (Double.doubleToLongBits(values[slot]) == Double.doubleToLongBits(val)) {
+                return index;
+            }
+            index++;
+        }
+        return -1;
+    }
+
+    /**
+     * Appends a value at the end of the list in constant time.
+     *
+     * @param newVal
+     *            the new value.
+     */
+    public void add(double newVal) {
+        // the slot first, as taking it may replace the values array
+        int slot = insertSlot(size());
+        values[slot] = newVal;
+    }
+
+    /**
+     * Inserts a value so that it ends up at the given index.
+     *
+     * @param i
+     *            0-based index of the new value, at most {@link #size()}.
+     * @param newVal
+     *            the new value.
+     * @throws IndexOutOfBoundsException
+     *             if the index is negative or greater than the size.
+     */
+    public void add(int i, double newVal) {
+        int slot = insertSlot(i);
+        values[slot] = newVal;
+    }
+
+    /**
+     * Removes the element at the given index.
+     *
+     * @param i
+     *            0-based index of the element to remove.
+     * @return the value of the removed element.
+     * @throws IndexOutOfBoundsException
+     *             if there is no element with that index.
+     */
+    public double remove(int i) {
+        return values[removeSlot(i)];
+    }
+
+    public PrimitiveIterator.OfDouble iterator() {
+        return new PrimitiveIterator.OfDouble() {
+            private int slot = head;
+
+            @Override
+            public boolean hasNext() {
+                return slot != NONE;
+            }
+
+            @Override
+            public double nextDouble() {
+                if (slot == NONE) {
+                    throw new NoSuchElementException();
+                }
+                double value = values[slot];
+                slot = next[slot];
+                return value;
+            }
+        };
+    }
+}
@@ -0,0 +1,81 @@
+package programming.set8.links;
+
+/**
+ * A list of values addressed by 0-based indices, the contract shared by
+ * {@link LinkedElementList} and {@link UnrolledElementList}.
+ *
+ * @param <T>
+ *            the type of the values
+ */
+public interface ElementList<T> extends Iterable<T> {
+
+    int size();
+
+    boolean isEmpty();
+
+    /**
+     * Returns the value at the given index.
+     *
+     * @param i
+     *            0-based index of the value to return.
+     * @return the value.
+     * @throws IndexOutOfBoundsException
+     *             if there is no element with that index.
+     */
+    T get(int i);
+
+    /**
+     * Replaces the value at the given index.
+     *
+     * @param i
+     *            0-based index of the value to replace.
+     * @param newVal
+     *            the new value.
+     * @return the value that was replaced.
+     * @throws IndexOutOfBoundsException
+     *             if there is no element with that index.
+     */
+    T set(int i, T newVal);
+
+    /**
+     * Returns the index of the first element carrying the given value.
+     *
+     * @param val
+     *            the value to search for, may be {@code null}.
+     * @return the index, or -1 if no element carries the value.
+     */
+    int firstIndexOf(T val);
+
+    /**
+     * Appends a value at the end of the list.
+     *
+     * @param newVal
+     *            the new value.
+     */
+    void add(T newVal);
+
+    /**
+     * Inserts a value so that it ends up at the given index.
+     *
+     * @param i
+     *            0-based index of the new value, at most {@link #size()}.
+     * @param newVal
+     *            the new value.
+     * @throws IndexOutOfBoundsException
+     *             if the index is negative or greater than the size.
+     */
+    void add(int i, T newVal);
+
+    /**
+     * Removes the element at the given index.
+     *
+     * @param i
+     *            0-based index of the element to remove.
+     * @return the value of the removed element.
+     * @throws IndexOutOfBoundsException
+     *             if there is no element with that index.
+     */
+    T remove(int i);
+
+    void clear();
+}
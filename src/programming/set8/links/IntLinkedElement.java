@@ -0,0 +1,145 @@
+package programming.set8.links;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * A linked list of {@code int} values with the contract of {@link ElementList}, without
+ * boxing and without an object per element: values and links are kept in two parallel
+ * {@code int} arrays, eight bytes per element, and removed elements are reused.
+ */
+public class IntLinkedElement extends PrimitiveLinkedElements {
+
+    private int[] values;
+
+    public IntLinkedElement() {
+        this(16);
+    }
+
+    /**
+     * Creates an empty list with room for the given number of elements.
+     *
+     * @param capacity
+     *            the number of elements the list can hold before its arrays grow
+     */
+    public IntLinkedElement(int capacity) {
+        super(capacity);
+        this.values = new int[capacity];
+    }
+
+    @Override
+    void growValues(int capacity) {
+        values = Arrays.copyOf(values, capacity);
+    }
+
+    /**
+     * Returns the value at the given index.
+     *
+     * @param i
+     *            0-based index of the value to return.
+     * @return the value.
+     * @throws IndexOutOfBoundsException
+     *             if there is no element with that index.
+     */
+    public int get(int i) {
+        return values[slotAt(i)];
+    }
+
+    /**
+     * Replaces the value at the given index.
+     *
+     * @param i
+     *            0-based index of the value to replace.
+     * @param newVal
+     *            the new value.
+     * @return the value that was replaced.
+     * @throws IndexOutOfBoundsException
+     *             if there is no element with that index.
+     */
+    public int set(int i, int newVal) {
+        int slot = slotAt(i);
+        int oldVal = values[slot];
+        values[slot] = newVal;
+        return oldVal;
+    }
+
+    /**
+     * Returns the index of the first element carrying the given value.
+     *
+     * @param val
+     *            the value to search for.
+     * @return the index, or -1 if no element carries the value.
+     */
+    public int firstIndexOf(int val) {
+        int index = 0;
+        for (int slot = head; slot != NONE; slot = next[slot]) {
+            if (values[slot] == val) {
+                return index;
+            }
+            index++;
+        }
+        return -1;
+    }
+
+    /**
+     * Appends a value at the end of the list in constant time.
+     *
+     * @param newVal
+     *            the new value.
+     */
+    public void add(int newVal) {
+        // the slot first, as taking it may replace the values array
+        int slot = insertSlot(size());
+        values[slot] = newVal;
+    }
+
+    /**
+     * Inserts a value so that it ends up at the given index.
+     *
+     * @param i
+     *            0-based index of the new value, at most {@link #size()}.
+     * @param newVal
+     *            the new value.
+     * @throws IndexOutOfBoundsException
+     *             if the index is negative or greater than the size.
+     */
+    public void add(int i, int newVal) {
+        int slot = insertSlot(i);
+        values[slot] = newVal;
+    }
+
+    /**
+     * Removes the element at the given index.
+     *
+     * @param i
+     *            0-based index of the element to remove.
+     * @return the value of the removed element.
+     * @throws IndexOutOfBoundsException
+     *             if there is no element with that index.
+     */
+    public int remove(int i) {
+        return values[removeSlot(i)];
+    }
+
+    public PrimitiveIterator.OfInt iterator() {
+        return new PrimitiveIterator.OfInt() {
+            private int slot = head;
+
+            @Override
+            public boolean hasNext() {
+                return slot != NONE;
+            }
+
+            @Override
+            public int nextInt() {
+                if (slot == NONE) {
+                    throw new NoSuchElementException();
+                }
+                int value = values[slot];
+                slot = next[slot];
+                return value;
+            }
+        };
+    }
+}
@@ -10,6 +10,24 @@ public class LinkedElement<T> {
         this.item = item;
     }
 
+    // accessors for LinkedElementList, which walks the elements in loops
+
+    T getItem() {
+        return this.item;
+    }
+
+    void setItem(T item) {
+        this.item = item;
+    }
+
+    LinkedElement<T> getNext() {
+        return this.next;
+    }
+
+    void setNext(LinkedElement<T> next) {
+        this.next = next;
+    }
+
     /**
      * Returns the value of the i-th linked element.
      *
@@ -53,14 +71,13 @@ public class LinkedElement<T> {
      * @return index where the value was found, or -1 if it's not in any of the linked elements.
      */
     public int firstIndexOf(T val) {
-        if (this.item.equals(val)) {
-            return 0;
-        }
-        if (next != null) {
-            int nextIndex = this.next.firstIndexOf(val);
-            if (nextIndex != -1) {
-                return 1 + this.next.firstIndexOf(val);
+        // a loop, so long lists do not run out of stack
+        int index = 0;
+        for (LinkedElement<T> element = this; element != null; element = element.next) {
+            if (element.item.equals(val)) {
+                return index;
             }
+            index++;
         }
         return -1;
     }
@@ -0,0 +1,187 @@
+package programming.set8.links;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A list built from {@link LinkedElement}s that remembers its last element and its size, so
+ * appending takes constant time. All methods walk the elements in loops rather than by
+ * recursion, so lists of any length can be used without running out of stack.
+ *
+ * @param <T>
+ *            the type of the values
+ */
+public class LinkedElementList<T> implements ElementList<T> {
+
+    private LinkedElement<T> head;
+    private LinkedElement<T> tail;
+    private int size;
+
+    public LinkedElementList() {
+    }
+
+    /**
+     * Creates a list of existing linked elements, which then belong to the list.
+     *
+     * @param head
+     *            the first element, or {@code null} for an empty list
+     */
+    public LinkedElementList(LinkedElement<T> head) {
+        this.head = head;
+        for (LinkedElement<T> element = head; element != null; element = element.getNext()) {
+            this.tail = element;
+            this.size++;
+        }
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * Returns the first linked element of the list. The elements must only be changed
+     * through the list, otherwise its size and last element are wrong.
+     *
+     * @return the first element, or {@code null} if the list is empty.
+     */
+    public LinkedElement<T> getHead() {
+        return this.head;
+    }
+
+    @Override
+    public T get(int i) {
+        return element(i).getItem();
+    }
+
+    @Override
+    public T set(int i, T newVal) {
+        LinkedElement<T> element = element(i);
+        T oldVal = element.getItem();
+        element.setItem(newVal);
+        return oldVal;
+    }
+
+    @Override
+    public int firstIndexOf(T val) {
+        int index = 0;
+        for (LinkedElement<T> element = head; element != null; element = element.getNext()) {
+            T item = element.getItem();
+            if (item == null ? val == null : item.equals(val)) {
+                return index;
+            }
+            index++;
+        }
+        return -1;
+    }
+
+    // constant time, as the last element is known
+    @Override
+    public void add(T newVal) {
+        LinkedElement<T> element = new LinkedElement<>(newVal);
+        if (tail == null) {
+            head = element;
+        } else {
+            tail.setNext(element);
+        }
+        tail = element;
+        size++;
+    }
+
+    @Override
+    public void add(int i, T newVal) {
+        if (i == size) {
+            add(newVal);
+            return;
+        }
+        if (i < 0 || i > size) {
+            throw new IndexOutOfBoundsException("index " + i + ", size " + size);
+        }
+
+        LinkedElement<T> element = new LinkedElement<>(newVal);
+        if (i == 0) {
+            element.setNext(head);
+            head = element;
+        } else {
+            LinkedElement<T> previous = element(i - 1);
+            element.setNext(previous.getNext());
+            previous.setNext(element);
+        }
+        size++;
+    }
+
+    @Override
+    public T remove(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("index " + i + ", size " + size);
+        }
+
+        LinkedElement<T> removed;
+        if (i == 0) {
+            removed = head;
+            head = removed.getNext();
+            if (head == null) {
+                tail = null;
+            }
+        } else {
+            LinkedElement<T> previous = element(i - 1);
+            removed = previous.getNext();
+            previous.setNext(removed.getNext());
+            if (removed == tail) {
+                tail = previous;
+            }
+        }
+        removed.setNext(null);
+        size--;
+        return removed.getItem();
+    }
+
+    @Override
+    public void clear() {
+        head = null;
+        tail = null;
+        size = 0;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+            private LinkedElement<T> next = head;
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public T next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                T item = next.getItem();
+                next = next.getNext();
+                return item;
+            }
+        };
+    }
+
+    // the last element is reached without walking the list
+    private LinkedElement<T> element(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("index " + i + ", size " + size);
+        }
+        if (i == size - 1) {
+            return tail;
+        }
+        LinkedElement<T> element = head;
+        for (int j = 0; j < i; j++) {
+            element = element.getNext();
+        }
+        return element;
+    }
+}
@@ -0,0 +1,145 @@
+package programming.set8.links;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * A linked list of {@code long} values with the contract of {@link ElementList}, kept like
+ * {@link IntLinkedElement} in parallel primitive arrays: twelve bytes per element, where a
+ * {@code LinkedElement<Long>} takes a node and a boxed value of its own.
+ */
+public class LongLinkedElement extends PrimitiveLinkedElements {
+
+    private long[] values;
+
+    public LongLinkedElement() {
+        this(16);
+    }
+
+    /**
+     * Creates an empty list with room for the given number of elements.
+     *
+     * @param capacity
+     *            the number of elements the list can hold before its arrays grow
+     */
+    public LongLinkedElement(int capacity) {
+        super(capacity);
+        this.values = new long[capacity];
+    }
+
+    @Override
+    void growValues(int capacity) {
+        values = Arrays.copyOf(values, capacity);
+    }
+
+    /**
+     * Returns the value at the given index.
+     *
+     * @param i
+     *            0-based index of the value to return.
+     * @return the value.
+     * @throws IndexOutOfBoundsException
+     *             if there is no element with that index.
+     */
+    public long get(int i) {
+        return values[slotAt(i)];
+    }
+
+    /**
+     * Replaces the value at the given index.
+     *
+     * @param i
+     *            0-based index of the value to replace.
+     * @param newVal
+     *            the new value.
+     * @return the value that was replaced.
+     * @throws IndexOutOfBoundsException
+     *             if there is no element with that index.
+     */
+    public long set(int i, long newVal) {
+        int slot = slotAt(i);
+        long oldVal = values[slot];
+        values[slot] = newVal;
+        return oldVal;
+    }
+
+    /**
+     * Returns the index of the first element carrying the given value.
+     *
+     * @param val
+     *            the value to search for.
+     * @return the index, or -1 if no element carries the value.
+     */
+    public int firstIndexOf(long val) {
+        int index = 0;
+        for (int slot = head; slot != NONE; slot = next[slot]) {
+            if (values[slot] == val) {
+                return index;
+            }
+            index++;
+        }
+        return -1;
+    }
+
+    /**
+     * Appends a value at the end of the list in constant time.
+     *
+     * @param newVal
+     *            the new value.
+     */
+    public void add(long newVal) {
+        // the slot first, as taking it may replace the values array
+        int slot = insertSlot(size());
+        values[slot] = newVal;
+    }
+
+    /**
+     * Inserts a value so that it ends up at the given index.
+     *
+     * @param i
+     *            0-based index of the new value, at most {@link #size()}.
+     * @param newVal
+     *            the new value.
+     * @throws IndexOutOfBoundsException
+     *             if the index is negative or greater than the size.
+     */
+    public void add(int i, long newVal) {
+        int slot = insertSlot(i);
+        values[slot] = newVal;
+    }
+
+    /**
+     * Removes the element at the given index.
+     *
+     * @param i
+     *            0-based index of the element to remove.
+     * @return the value of the removed element.
+     * @throws IndexOutOfBoundsException
+     *             if there is no element with that index.
+     */
+    public long remove(int i) {
+        return values[removeSlot(i)];
+    }
+
+    public PrimitiveIterator.OfLong iterator() {
+        return new PrimitiveIterator.OfLong() {
+            private int slot = head;
+
+            @Override
+            public boolean hasNext() {
+                return slot != NONE;
+            }
+
+            @Override
+            public long nextLong() {
+                if (slot == NONE) {
+                    throw new NoSuchElementException();
+                }
+                long value = values[slot];
+                slot = next[slot];
+                return value;
+            }
+        };
+    }
+}
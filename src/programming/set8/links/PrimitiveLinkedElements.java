@@ -0,0 +1,138 @@
+package programming.set8.links;
+
+import java.util.Arrays;
+
+/**
+ * The links of a list whose values are kept by a subclass in a primitive array. Elements are
+ * slots in the arrays rather than objects: {@code next[slot]} is the slot of the following
+ * element, and slots of removed elements are chained into a free list and used again by the
+ * next insert, so a list that shrinks and grows does not allocate.
+ */
+abstract class PrimitiveLinkedElements {
+
+    static final int NONE = -1;
+
+    int[] next;
+    int head = NONE;
+    private int tail = NONE;
+    private int size;
+
+    // removed slots, chained through next, and the number of slots ever used
+    private int free = NONE;
+    private int used;
+
+    PrimitiveLinkedElements(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.next = new int[capacity];
+    }
+
+    // called when more slots are needed, to make the value array as long as next
+    abstract void growValues(int capacity);
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * Removes all elements. The arrays keep their size, so the list can grow again without
+     * allocating.
+     */
+    public void clear() {
+        head = NONE;
+        tail = NONE;
+        size = 0;
+        free = NONE;
+        used = 0;
+    }
+
+    // the slot of the element at index i; the last one is reached without walking
+    int slotAt(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("index " + i + ", size " + size);
+        }
+        if (i == size - 1) {
+            return tail;
+        }
+        int slot = head;
+        for (int j = 0; j < i; j++) {
+            slot = next[slot];
+        }
+        return slot;
+    }
+
+    // a new slot linked in at index i, whose value the caller sets
+    int insertSlot(int i) {
+        if (i < 0 || i > size) {
+            throw new IndexOutOfBoundsException("index " + i + ", size " + size);
+        }
+
+        int slot = allocate();
+        if (i == size) {
+            next[slot] = NONE;
+            if (tail == NONE) {
+                head = slot;
+            } else {
+                next[tail] = slot;
+            }
+            tail = slot;
+        } else if (i == 0) {
+            next[slot] = head;
+            head = slot;
+        } else {
+            int previous = slotAt(i - 1);
+            next[slot] = next[previous];
+            next[previous] = slot;
+        }
+        size++;
+        return slot;
+    }
+
+    // unlinks the element at index i and puts its slot on the free list; the value
+    // stays in the slot until it is used again
+    int removeSlot(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("index " + i + ", size " + size);
+        }
+
+        int slot;
+        if (i == 0) {
+            slot = head;
+            head = next[slot];
+            if (head == NONE) {
+                tail = NONE;
+            }
+        } else {
+            int previous = slotAt(i - 1);
+            slot = next[previous];
+            next[previous] = next[slot];
+            if (slot == tail) {
+                tail = previous;
+            }
+        }
+        size--;
+
+        next[slot] = free;
+        free = slot;
+        return slot;
+    }
+
+    private int allocate() {
+        if (free != NONE) {
+            int slot = free;
+            free = next[slot];
+            return slot;
+        }
+        if (used == next.length) {
+            int capacity = next.length * 2;
+            next = Arrays.copyOf(next, capacity);
+            growValues(capacity);
+        }
+        return used++;
+    }
+}
@@ -0,0 +1,287 @@
+package programming.set8.links;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A list that keeps its values in chunks of up to {@value #CHUNK_SIZE} consecutive array
+ * slots instead of one linked element per value, so walking it touches few cache lines.
+ * A Fenwick tree over the number of values per chunk finds the chunk holding an index in
+ * O(log n) steps.
+ *
+ * Inserting or removing in the middle shifts values within a single chunk. A full chunk is
+ * split in two, and a chunk is merged with its neighbour once both fit into half a chunk.
+ * Splitting, merging or dropping an emptied chunk in the middle rebuilds the index, in time
+ * linear in the number of chunks; as a chunk must gain or lose about half a chunk of values
+ * before it is split or merged again, this cost is spread over those changes. Adding and
+ * removing values at the end never rebuilds the index, as the last chunk is covered by no
+ * other entry of it.
+ *
+ * @param <T>
+ *            the type of the values
+ */
+public class UnrolledElementList<T> implements ElementList<T> {
+
+    private static final int CHUNK_SIZE = 64;
+
+    // the chunks in list order and how many values each holds; no chunk is empty
+    private Object[][] chunks = new Object[4][];
+    private int[] counts = new int[4];
+    private int chunkCount;
+    private int size;
+
+    // 1-based Fenwick tree: tree[k] holds the values in chunks k - (k & -k) to k - 1
+    private int[] tree = new int[5];
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(int i) {
+        checkIndex(i);
+        long location = locate(i);
+        return (T) chunks[chunkOf(location)][offsetOf(location)];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T set(int i, T newVal) {
+        checkIndex(i);
+        long location = locate(i);
+        Object[] chunk = chunks[chunkOf(location)];
+        T oldVal = (T) chunk[offsetOf(location)];
+        chunk[offsetOf(location)] = newVal;
+        return oldVal;
+    }
+
+    @Override
+    public int firstIndexOf(T val) {
+        int index = 0;
+        for (int c = 0; c < chunkCount; c++) {
+            Object[] chunk = chunks[c];
+            for (int j = 0; j < counts[c]; j++) {
+                if (val == null ? chunk[j] == null : val.equals(chunk[j])) {
+                    return index + j;
+                }
+            }
+            index += counts[c];
+        }
+        return -1;
+    }
+
+    // constant time apart from the O(log n) index update
+    @Override
+    public void add(T newVal) {
+        if (chunkCount == 0 || counts[chunkCount - 1] == CHUNK_SIZE) {
+            appendChunk();
+        }
+        int last = chunkCount - 1;
+        chunks[last][counts[last]++] = newVal;
+        addToIndex(last, 1);
+        size++;
+    }
+
+    @Override
+    public void add(int i, T newVal) {
+        if (i == size) {
+            add(newVal);
+            return;
+        }
+        checkIndex(i);
+
+        long location = locate(i);
+        int c = chunkOf(location);
+        int offset = offsetOf(location);
+        if (counts[c] == CHUNK_SIZE) {
+            splitChunk(c);
+            if (offset >= CHUNK_SIZE / 2) {
+                c++;
+                offset -= CHUNK_SIZE / 2;
+            }
+        }
+
+        Object[] chunk = chunks[c];
+        System.arraycopy(chunk, offset, chunk, offset + 1, counts[c] - offset);
+        chunk[offset] = newVal;
+        counts[c]++;
+        addToIndex(c, 1);
+        size++;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T remove(int i) {
+        checkIndex(i);
+        long location = locate(i);
+        int c = chunkOf(location);
+        int offset = offsetOf(location);
+
+        Object[] chunk = chunks[c];
+        T removed = (T) chunk[offset];
+        System.arraycopy(chunk, offset + 1, chunk, offset, counts[c] - offset - 1);
+        chunk[--counts[c]] = null;
+        size--;
+
+        addToIndex(c, -1);
+        if (counts[c] == 0) {
+            removeChunk(c);
+        } else if (c + 1 < chunkCount && counts[c] + counts[c + 1] <= CHUNK_SIZE / 2) {
+            mergeWithNext(c);
+        } else if (c > 0 && counts[c - 1] + counts[c] <= CHUNK_SIZE / 2) {
+            mergeWithNext(c - 1);
+        }
+        return removed;
+    }
+
+    @Override
+    public void clear() {
+        chunks = new Object[4][];
+        counts = new int[4];
+        tree = new int[5];
+        chunkCount = 0;
+        size = 0;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+            private int chunk;
+            private int offset;
+
+            @Override
+            public boolean hasNext() {
+                return chunk < chunkCount;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public T next() {
+                if (chunk >= chunkCount) {
+                    throw new NoSuchElementException();
+                }
+                T item = (T) chunks[chunk][offset++];
+                if (offset == counts[chunk]) {
+                    chunk++;
+                    offset = 0;
+                }
+                return item;
+            }
+        };
+    }
+
+    private void checkIndex(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("index " + i + ", size " + size);
+        }
+    }
+
+    // the chunk holding index i in the upper and the offset in it in the lower 32 bits
+    private long locate(int i) {
+        int chunk = 0;
+        int remaining = i;
+        for (int step = Integer.highestOneBit(chunkCount); step > 0; step >>>= 1) {
+            int next = chunk + step;
+            if (next <= chunkCount && tree[next] <= remaining) {
+                chunk = next;
+                remaining -= tree[next];
+            }
+        }
+        return (long) chunk << 32 | remaining;
+    }
+
+    private static int chunkOf(long location) {
+        return (int) (location >>> 32);
+    }
+
+    private static int offsetOf(long location) {
+        return (int) location;
+    }
+
+    private void addToIndex(int chunk, int delta) {
+        for (int k = chunk + 1; k <= chunkCount; k += k & -k) {
+            tree[k] += delta;
+        }
+    }
+
+    // the number of values in the first n chunks
+    private int countBefore(int n) {
+        int count = 0;
+        for (int k = n; k > 0; k -= k & -k) {
+            count += tree[k];
+        }
+        return count;
+    }
+
+    private void rebuildIndex() {
+        Arrays.fill(tree, 0);
+        for (int k = 1; k <= chunkCount; k++) {
+            tree[k] += counts[k - 1];
+            int parent = k + (k & -k);
+            if (parent <= chunkCount) {
+                tree[parent] += tree[k];
+            }
+        }
+    }
+
+    private void ensureChunkCapacity(int capacity) {
+        if (capacity > chunks.length) {
+            int length = Math.max(capacity, chunks.length * 2);
+            chunks = Arrays.copyOf(chunks, length);
+            counts = Arrays.copyOf(counts, length);
+            tree = Arrays.copyOf(tree, length + 1);
+        }
+    }
+
+    // an empty chunk at the end; its index entry covers earlier chunks only
+    private void appendChunk() {
+        ensureChunkCapacity(chunkCount + 1);
+        chunks[chunkCount] = new Object[CHUNK_SIZE];
+        counts[chunkCount] = 0;
+        chunkCount++;
+        tree[chunkCount] = countBefore(chunkCount - 1) - countBefore(chunkCount - (chunkCount & -chunkCount));
+    }
+
+    // moves the upper half of a full chunk into a new chunk after it
+    private void splitChunk(int c) {
+        ensureChunkCapacity(chunkCount + 1);
+        System.arraycopy(chunks, c + 1, chunks, c + 2, chunkCount - c - 1);
+        System.arraycopy(counts, c + 1, counts, c + 2, chunkCount - c - 1);
+        Object[] upper = new Object[CHUNK_SIZE];
+        System.arraycopy(chunks[c], CHUNK_SIZE / 2, upper, 0, CHUNK_SIZE / 2);
+        Arrays.fill(chunks[c], CHUNK_SIZE / 2, CHUNK_SIZE, null);
+        chunks[c + 1] = upper;
+        counts[c] = CHUNK_SIZE / 2;
+        counts[c + 1] = CHUNK_SIZE / 2;
+        chunkCount++;
+        rebuildIndex();
+    }
+
+    private void mergeWithNext(int c) {
+        System.arraycopy(chunks[c + 1], 0, chunks[c], counts[c], counts[c + 1]);
+        addToIndex(c, counts[c + 1]);
+        counts[c] += counts[c + 1];
+        removeChunk(c + 1);
+    }
+
+    // only the entry of the last chunk covers it, so dropping that one needs no rebuild
+    private void removeChunk(int c) {
+        boolean last = c == chunkCount - 1;
+        System.arraycopy(chunks, c + 1, chunks, c, chunkCount - c - 1);
+        System.arraycopy(counts, c + 1, counts, c, chunkCount - c - 1);
+        chunkCount--;
+        chunks[chunkCount] = null;
+        counts[chunkCount] = 0;
+        if (!last) {
+            rebuildIndex();
+        }
+    }
+}